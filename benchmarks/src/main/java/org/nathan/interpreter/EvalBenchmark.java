@@ -0,0 +1,49 @@
+package org.nathan.interpreter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * procedures of functions.ss, with expansion and analysis of the call included
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvalBenchmark {
+    @Param({"interpreted", "compiled"})
+    String tier;
+
+    Jispy interpreter;
+
+    @Setup
+    public void setup() {
+        interpreter = Sources.withFunctions();
+        interpreter.setCompiling(tier.equals("compiled"));
+        interpreter.evalScripts("(define deck (range 0 64))");
+        interpreter.evalScripts("(define items (map (lambda (x) (if (= 0 (- x (* 3 (round (/ x 3))))) 0 x)) (range 0 500)))");
+    }
+
+    @Benchmark
+    public Object fib() {
+        return interpreter.evalScripts("(fib 20)");
+    }
+
+    @Benchmark
+    public Object count() {
+        return interpreter.evalScripts("(count 0 items)");
+    }
+
+    @Benchmark
+    public Object riffShuffle() {
+        return interpreter.evalScripts("(riff-shuffle deck)");
+    }
+
+    @Benchmark
+    public Object sumSquaresRange() {
+        return interpreter.evalScripts("(sum-squares-range 1 3000)");
+    }
+}
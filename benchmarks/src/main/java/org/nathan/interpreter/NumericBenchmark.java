@@ -0,0 +1,57 @@
+package org.nathan.interpreter;
+
+import org.apache.commons.math3.complex.Complex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * binary arithmetic for every pair of Integer, Double and Complex operands
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericBenchmark {
+    @Param({"Integer", "Double", "Complex"})
+    String left;
+    @Param({"Integer", "Double", "Complex"})
+    String right;
+
+    Object a;
+    Object b;
+
+    private static Object number(String type, int n) {
+        switch (type) {
+            case "Integer":
+                return n;
+            case "Double":
+                return n + 0.5;
+            default:
+                return new Complex(n, 1);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        a = number(left, 7);
+        b = number(right, 3);
+    }
+
+    @Benchmark
+    public Object plus() {
+        return NumericOperators.plus(a, b);
+    }
+
+    @Benchmark
+    public Object multiply() {
+        return NumericOperators.multiply(a, b);
+    }
+
+    @Benchmark
+    public Object divide() {
+        return NumericOperators.divide(a, b);
+    }
+}
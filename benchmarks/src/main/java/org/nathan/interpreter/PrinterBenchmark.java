@@ -0,0 +1,52 @@
+package org.nathan.interpreter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * evalToString on nested lists of numbers, strings and symbols
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrinterBenchmark {
+    @Param({"4", "6"})
+    int depth;
+
+    Object list;
+
+    /**
+     * @return tree with 8 children per list, leaves cycling through the printed types
+     */
+    private static Object tree(int depth, int[] leaf) {
+        if (depth == 0) {
+            switch (leaf[0]++ % 4) {
+                case 0:
+                    return leaf[0];
+                case 1:
+                    return leaf[0] + 0.25;
+                case 2:
+                    return "s" + leaf[0];
+                default:
+                    return Symbol.of("sym");
+            }
+        }
+        var children = new Object[8];
+        for (int i = 0; i < children.length; i++) children[i] = tree(depth - 1, leaf);
+        return Pair.fromArray(children);
+    }
+
+    @Setup
+    public void setup() {
+        list = tree(depth, new int[1]);
+    }
+
+    @Benchmark
+    public String evalToString() {
+        return Jispy.evalToString(list);
+    }
+}
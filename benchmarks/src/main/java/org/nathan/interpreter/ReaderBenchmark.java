@@ -0,0 +1,43 @@
+package org.nathan.interpreter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tokenizer, and reader plus expander, on large sources
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderBenchmark {
+    @Param({"100000", "1000000"})
+    int size;
+
+    String source;
+    Jispy interpreter;
+
+    @Setup
+    public void setup() {
+        source = Sources.large(size);
+        interpreter = new Jispy();
+    }
+
+    @Benchmark
+    public void nextToken(Blackhole bh) {
+        var in = new InputPort(source);
+        Object token;
+        while ((token = in.nextToken()) != Symbol.eof) bh.consume(token);
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) {
+        var in = new InputPort(source);
+        Object x;
+        while ((x = interpreter.parse(in)) != Symbol.eof) bh.consume(x);
+    }
+}
@@ -0,0 +1,50 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * scheme sources shared by the benchmarks
+ */
+final class Sources {
+    private Sources() {
+    }
+
+    static @NotNull String functions() {
+        try (var in = Sources.class.getResourceAsStream("/functions.ss")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return functions.ss repeated until it is at least size characters long
+     */
+    static @NotNull String large(int size) {
+        var functions = functions();
+        var res = new StringBuilder(size + functions.length());
+        while (res.length() < size) res.append(functions).append('\n');
+        return res.toString();
+    }
+
+    static @NotNull Jispy withFunctions() {
+        try {
+            var file = File.createTempFile("functions", ".ss");
+            file.deleteOnExit();
+            Files.writeString(file.toPath(), functions());
+            var interpreter = new Jispy();
+            interpreter.loadLib(file);
+            return interpreter;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
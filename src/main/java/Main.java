@@ -1,5 +1,4 @@
-
-
+import org.nathan.interpreter.BenchmarkSuite;
 import org.nathan.interpreter.Jispy;
 
 import java.io.*;
@@ -10,7 +9,25 @@ class Main {
     }
 
     static void JispyApp(String[] args) {
-        if (args.length == 2) {
+        if (args.length >= 1 && args[0].equals("--bench")) {
+            int iterations = args.length >= 2 ? parseIterations(args[1]) : 50;
+            if (iterations < 1) {
+                System.err.println("usage: --bench [iterations], iterations a positive integer, given " + args[1]);
+                System.exit(2);
+            }
+            BenchmarkSuite.run(System.out, iterations, iterations);
+        }
+        else if (args.length >= 2 && args[0].equals("--save-image")) {
+            Jispy interpreter = new Jispy();
+            for (int i = 2; i < args.length; i++) interpreter.loadLib(new File(args[i]));
+            interpreter.saveImage(new File(args[1]));
+        }
+        else if (args.length >= 2 && args[0].equals("--image")) {
+            Jispy interpreter = Jispy.loadImage(new File(args[1]));
+            if (args.length == 3) { interpreter.runFile(new File(args[2])); }
+            else { interpreter.repl(); }
+        }
+        else if (args.length == 2) {
             var f = new File(args[0]);
             var l = new File(args[1]);
             if (f.exists() && l.exists()) {
@@ -24,4 +41,16 @@ class Main {
             interpreter.repl();
         }
     }
+
+    /**
+     * @return s as an int, or -1 when it is not one
+     */
+    private static int parseIterations(String s) {
+        try {
+            return Integer.parseInt(s);
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 }
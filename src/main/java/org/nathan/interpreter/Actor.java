@@ -0,0 +1,151 @@
+package org.nathan.interpreter;
+
+import org.apache.commons.math3.complex.Complex;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.nathan.interpreter.Jispy.evalToString;
+
+/**
+ * message passing process. an actor made by spawn-actor has a handler procedure, called with each message
+ * in turn on a fixed pool of workers, so an idle actor only costs its mailbox. the globals it defines or
+ * assigns are private to it, the others are those of the spawning evaluation. other threads get a mailbox
+ * of their own on first use, which receive reads. mailboxes are bounded and send does not wait, messages
+ * must be immutable: numbers, strings, symbols, booleans, lists of them and actors
+ */
+final class Actor {
+    static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * messages handled before a busy actor yields its worker
+     */
+    private static final int BATCH = 64;
+    private static final AtomicInteger ids = new AtomicInteger();
+    private static final ExecutorService workers = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                var t = new Thread(r, "jispy-actor");
+                t.setDaemon(true);
+                return t;
+            });
+    /**
+     * actor whose handler runs on this thread
+     */
+    private static final ThreadLocal<Actor> running = new ThreadLocal<>();
+    private static final ThreadLocal<Actor> threadMailbox =
+            ThreadLocal.withInitial(() -> new Actor(null, null, DEFAULT_CAPACITY));
+
+    private final int id = ids.incrementAndGet();
+    private final Lambda handler;
+    private final Environment global;
+    private final BlockingQueue<Object> mailbox;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private Actor(Lambda handler, Environment global, int capacity) {
+        this.handler = handler;
+        this.global = global;
+        mailbox = new LinkedBlockingQueue<>(capacity);
+    }
+
+    static @NotNull Actor spawn(@NotNull Lambda handler, int capacity) {
+        if (capacity < 1) { throw new TypeException("mailbox capacity must be positive, given " + capacity); }
+        var caller = Environment.current();
+        var global = caller == null ? null : new Environment(caller);
+        return new Actor(handler, global, capacity);
+    }
+
+    /**
+     * @return the actor running on this thread, or the mailbox of this thread
+     */
+    static @NotNull Actor self() {
+        var actor = running.get();
+        return actor != null ? actor : threadMailbox.get();
+    }
+
+    /**
+     * @return false when the mailbox is full
+     */
+    boolean send(Object message) {
+        checkImmutable(message);
+        if (!mailbox.offer(message)) { return false; }
+        if (handler != null) { schedule(); }
+        return true;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) { workers.execute(this::drain); }
+    }
+
+    private void drain() {
+        running.set(this);
+        try {
+            for (int i = 0; i < BATCH; i++) {
+                var message = mailbox.poll();
+                if (message == null) { break; }
+                try {
+                    handle(message);
+                }
+                catch (RuntimeException e) {
+                    e.printStackTrace(System.err);
+                }
+            }
+        }
+        finally {
+            running.remove();
+            scheduled.set(false);
+        }
+        if (!mailbox.isEmpty()) { schedule(); }
+    }
+
+    private void handle(Object message) {
+        if (global == null) { handler.apply(List.of(message)); }
+        else if (handler instanceof Procedure) {
+            global.enter(() -> ((Procedure) handler).invoke(global, new Object[]{message}));
+        }
+        else { global.enter(() -> handler.apply(List.of(message))); }
+    }
+
+    /**
+     * next message of the mailbox of this thread
+     *
+     * @param timeout milliseconds to wait at most, negative to wait for ever
+     * @param ifNone  value when no message came in time, raised as a condition when null
+     */
+    static Object receive(long timeout, Object ifNone) {
+        if (running.get() != null) {
+            throw new IllegalStateException("actors get their messages as arguments of their handler");
+        }
+        var mailbox = threadMailbox.get().mailbox;
+        try {
+            var message = timeout < 0 ? mailbox.take() : mailbox.poll(timeout, TimeUnit.MILLISECONDS);
+            if (message != null) { return message; }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while receiving", e);
+        }
+        if (ifNone == null) { throw new Condition(Symbol.of("timeout")); }
+        return ifNone;
+    }
+
+    private static boolean isImmutableAtom(Object x) {
+        return x == null || x instanceof Boolean || x instanceof Number || x instanceof Complex ||
+                x instanceof String || x instanceof Symbol || x instanceof Actor;
+    }
+
+    private static void checkImmutable(Object x) {
+        if (isImmutableAtom(x)) { return; }
+        else if (x instanceof Pair || x == Jispy.Nil) {
+            for (var e : (List<?>) x) checkImmutable(e);
+            return;
+        }
+        throw new TypeException("can not send " + evalToString(x));
+    }
+
+    @Override
+    public String toString() {
+        return "#<actor " + id + ">";
+    }
+}
@@ -0,0 +1,112 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.nathan.interpreter.Symbol.*;
+
+/**
+ * turns expanded expressions into {@link Node} trees once, so that evaluation
+ * no longer dispatches on the shape of the list every time it runs.
+ * local variables are resolved to (depth, slot) coordinates of their {@link Frame}
+ */
+final class Analyzer {
+
+    private Analyzer() {
+    }
+
+    /**
+     * names of the frame of one lambda, parameters first and then internal defines
+     */
+    private static final class Scope {
+        final List<Symbol> names = new ArrayList<>();
+        final Scope outer;
+        int parameterCount;
+
+        Scope(Scope outer) {
+            this.outer = outer;
+        }
+    }
+
+    static @NotNull Node analyze(Object x) {
+        return analyze(x, null);
+    }
+
+    private static @NotNull Node analyze(Object x, Scope scope) {
+        if (x instanceof Symbol) { return reference((Symbol) x, scope); }
+        else if (!(x instanceof List)) { return new Node.Constant(x); }
+        List<Object> l = (List<Object>) x;
+        var op = l.get(0);
+        if (op == _quote) { return new Node.Constant(Pair.fromTree(l.get(1))); }
+        else if (op == _if) {
+            return new Node.If(analyze(l.get(1), scope), analyze(l.get(2), scope), analyze(l.get(3), scope));
+        }
+        else if (op == _set) {
+            var v = (Symbol) l.get(1);
+            var value = analyze(l.get(2), scope);
+            int depth = 0;
+            for (var s = scope; s != null; s = s.outer, depth++) {
+                int slot = s.names.indexOf(v);
+                if (slot >= 0) { return new Node.LocalSet(depth, slot, value); }
+            }
+            return new Node.GlobalSet(v, value);
+        }
+        else if (op == _define) {
+            var v = (Symbol) l.get(1);
+            var value = analyze(l.get(2), scope);
+            if (value instanceof Node.LambdaNode) { ((Node.LambdaNode) value).name = v.str; }
+            if (scope == null) { return new Node.GlobalDefine(v, value); }
+            else { return new Node.LocalDefine(scope.names.indexOf(v), value); }
+        }
+        else if (op == _lambda) { return lambda(l.get(1), l.get(2), scope); }
+        else if (op == _begin) {
+            return new Node.Begin(analyzeAll(l.subList(1, l.size()), scope));
+        }
+        else { return new Node.Call(analyze(op, scope), analyzeAll(l.subList(1, l.size()), scope)); }
+    }
+
+    private static @NotNull Node reference(@NotNull Symbol v, Scope scope) {
+        int depth = 0;
+        for (var s = scope; s != null; s = s.outer, depth++) {
+            int slot = s.names.indexOf(v);
+            if (slot >= 0) { return new Node.LocalRef(v, depth, slot, slot >= s.parameterCount); }
+        }
+        return new Node.GlobalRef(v);
+    }
+
+    private static @NotNull Node.LambdaNode lambda(@NotNull Object params, Object body, Scope outer) {
+        var scope = new Scope(outer);
+        boolean variadic = params instanceof Symbol;
+        if (variadic) { scope.names.add((Symbol) params); }
+        else {
+            for (var p : (List<Object>) params) scope.names.add((Symbol) p);
+        }
+        scope.parameterCount = scope.names.size();
+        collectDefinitions(body, scope.names);
+        var node = analyze(body, scope);
+        return new Node.LambdaNode(params, scope.parameterCount, variadic, scope.names.size(), node);
+    }
+
+    /**
+     * internal defines get a slot in the frame of the enclosing lambda
+     */
+    private static void collectDefinitions(Object x, @NotNull List<Symbol> names) {
+        if (!(x instanceof List) || ((List<?>) x).isEmpty()) { return; }
+        List<Object> l = (List<Object>) x;
+        var op = l.get(0);
+        if (op == _quote || op == _lambda) { return; }
+        if (op == _define && !names.contains(l.get(1))) { names.add((Symbol) l.get(1)); }
+        for (var i : l) collectDefinitions(i, names);
+    }
+
+    private static @NotNull Node[] analyzeAll(@NotNull List<Object> exps, Scope scope) {
+        var nodes = new Node[exps.size()];
+        int i = 0;
+        for (var exp : exps) {
+            nodes[i++] = analyze(exp, scope);
+        }
+        return nodes;
+    }
+}
@@ -4,4 +4,9 @@ class ArgumentsCountException extends IllegalArgumentException {
     ArgumentsCountException() {
         super();
     }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return Jispy.debug ? super.fillInStackTrace() : this;
+    }
 }
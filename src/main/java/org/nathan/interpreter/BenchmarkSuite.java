@@ -0,0 +1,83 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * end to end scheme benchmarks from the benchmarks resource directory. every program defines
+ * run, called once per iteration, and expected, the value run must return
+ */
+public final class BenchmarkSuite {
+    public static final List<String> PROGRAMS =
+            List.of("tak", "nqueens", "deriv", "lists", "fib", "strings", "closures");
+
+    private BenchmarkSuite() {
+    }
+
+    /**
+     * runs every program in a fresh interpreter and prints one csv line each:
+     * benchmark, iterations, ops/s, mean and p99 time in milliseconds and bytes allocated per iteration,
+     * or -1 when the JVM does not count allocations
+     *
+     * @throws IllegalArgumentException when warmup is negative or iterations below 1
+     */
+    public static void run(@NotNull PrintStream out, int warmup, int iterations) {
+        if (warmup < 0) { throw new IllegalArgumentException("negative warmup: " + warmup); }
+        if (iterations < 1) { throw new IllegalArgumentException("iterations below 1: " + iterations); }
+        out.println("benchmark,iterations,ops_per_s,mean_ms,p99_ms,allocated_bytes");
+        for (var name : PROGRAMS) {
+            var interpreter = new Jispy();
+            interpreter.setParseCacheSize(1);
+            interpreter.load(new InputPort(source(name)));
+            if (!Boolean.TRUE.equals(interpreter.evalScripts("(equal? (run) expected)"))) {
+                throw new IllegalStateException(name + " returned a wrong result");
+            }
+            for (int i = 0; i < warmup; i++) interpreter.evalScripts("(run)");
+            var times = new long[iterations];
+            long allocated = allocatedBytes();
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                interpreter.evalScripts("(run)");
+                times[i] = System.nanoTime() - start;
+            }
+            if (allocated >= 0) { allocated = (allocatedBytes() - allocated) / iterations; }
+            Arrays.sort(times);
+            double total = Arrays.stream(times).sum();
+            double p99 = times[Math.min(iterations - 1, (int) Math.ceil(iterations * 0.99) - 1)];
+            out.printf(Locale.ROOT, "%s,%d,%.2f,%.4f,%.4f,%d%n", name, iterations, iterations * 1e9 / total,
+                    total / iterations / 1e6, p99 / 1e6, allocated);
+        }
+    }
+
+    private static @NotNull String source(@NotNull String name) {
+        try (var in = BenchmarkSuite.class.getResourceAsStream("/benchmarks/" + name + ".ss")) {
+            if (in == null) { throw new IllegalStateException("no benchmark " + name); }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or -1
+     */
+    private static long allocatedBytes() {
+        var threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            var counting = (com.sun.management.ThreadMXBean) threads;
+            if (counting.isThreadAllocatedMemorySupported() && counting.isThreadAllocatedMemoryEnabled()) {
+                return counting.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
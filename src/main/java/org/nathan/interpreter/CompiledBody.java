@@ -0,0 +1,112 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static org.nathan.interpreter.Jispy.evalToString;
+
+/**
+ * superclass of the hidden classes generated by {@link Compiler}, the optimized tier of one lambda
+ */
+abstract class CompiledBody {
+    final Object[] constants;
+    final Node.LambdaNode lambda;
+    /**
+     * cleared when a global the generated code speculated on is rebound
+     */
+    volatile boolean valid = true;
+
+    CompiledBody(@NotNull Object[] constants, @NotNull Node.LambdaNode lambda) {
+        this.constants = constants;
+        this.lambda = lambda;
+    }
+
+    /**
+     * @param global environment of the caller
+     */
+    abstract Object invoke(@NotNull Procedure self, @NotNull Environment global, @NotNull Object[] args);
+
+    final Object enter(@NotNull Procedure self, @NotNull Environment global, @NotNull Object[] args) {
+        if (args.length != lambda.parameterCount) {
+            throw new TypeException(String.format("'expected %s, given %s",
+                    evalToString(lambda.parameters),
+                    evalToString(Arrays.asList(args))));
+        }
+        return invoke(self, global, args);
+    }
+
+    /**
+     * direct call of a closure of the same lambda from its own code
+     */
+    final Object reenter(@NotNull Procedure self, @NotNull Environment global, @NotNull Object[] args) {
+        return valid ? trampoline(invoke(self, global, args), global) : self.invoke(global, args);
+    }
+
+    /**
+     * continues a loop in the interpreter after the code was deoptimized
+     */
+    final Object resume(@NotNull Procedure self, @NotNull Environment global, @NotNull Object[] args) {
+        return Jispy.execute(lambda.body, Frame.bind(lambda, args, self.environment(), global), lambda);
+    }
+
+    /**
+     * tail call of a procedure from compiled code, returned to the caller of the code instead of made,
+     * so tail calls between procedures run in constant java stack
+     */
+    static final class TailCall {
+        final Procedure proc;
+        final Object[] args;
+
+        TailCall(@NotNull Procedure proc, @NotNull Object[] args) {
+            this.proc = proc;
+            this.args = args;
+        }
+    }
+
+    /**
+     * tail call from compiled code, builtins are called at once
+     */
+    static Object tailCall(Object proc, @NotNull Object[] args) {
+        if (proc instanceof Procedure) { return new TailCall((Procedure) proc, args); }
+        else { return ((Lambda) proc).apply(Arrays.asList(args)); }
+    }
+
+    /**
+     * makes the tail calls returned by compiled code until one returns a value
+     *
+     * @param res value returned by {@link #enter}
+     */
+    static Object trampoline(Object res, @NotNull Environment global) {
+        while (res instanceof TailCall) {
+            var call = (TailCall) res;
+            var p = call.proc;
+            var lambda = p.lambda();
+            var metrics = global.metrics;
+            if (metrics != null) {
+                metrics.calls.increment();
+                metrics.tailCalls.increment();
+            }
+            var code = lambda.compiled;
+            if (code == null) { code = lambda.profile(global, false); }
+            if (code == null || global.stackless) {
+                return Jispy.execute(lambda.body, Frame.bind(lambda, call.args, p.environment(), global), lambda);
+            }
+            res = code.enter(p, global, call.args);
+        }
+        return res;
+    }
+
+    /**
+     * non tail call from compiled code
+     */
+    static Object call(Object proc, @NotNull Environment global, @NotNull Object[] args) {
+        if (proc instanceof Procedure) { return ((Procedure) proc).invoke(global, args); }
+        else { return ((Lambda) proc).apply(Arrays.asList(args)); }
+    }
+
+    static Object checkAssigned(Object value, @NotNull Symbol name) {
+        if (value == Frame.UNASSIGNED) { throw new LookUpException(name.toString()); }
+        return value;
+    }
+}
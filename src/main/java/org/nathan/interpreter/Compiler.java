@@ -0,0 +1,493 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * translates the body of a lambda into a hidden class extending {@link CompiledBody}.
+ * parameters and internal defines become JVM locals, self tail calls become a jump back to the start and
+ * other tail calls are returned to the caller as a {@link CompiledBody.TailCall}, so they use no java stack.
+ * lambdas containing forms it does not support (nested lambdas, variadic parameters) stay interpreted.
+ * <p>
+ * the code speculates that the globals called by the lambda keep their current values: standard
+ * arithmetic, comparison and list procedures are inlined and other procedures are called without a lookup.
+ * the lambda is registered as a dependent of those globals and deoptimized when one of them is rebound
+ */
+final class Compiler {
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String OBJECT_DESC = "Ljava/lang/Object;";
+    private static final String BODY = Type.getInternalName(CompiledBody.class);
+    private static final String PROCEDURE = Type.getInternalName(Procedure.class);
+    private static final String NUMERIC = Type.getInternalName(NumericOperators.class);
+    private static final String FRAME = Type.getInternalName(Frame.class);
+    private static final String ENVIRONMENT = Type.getInternalName(Environment.class);
+    private static final String SYMBOL = Type.getInternalName(Symbol.class);
+    private static final String UTILS = Type.getInternalName(Utils.class);
+    private static final String NAME = "org/nathan/interpreter/CompiledLambda";
+    private static final String INVOKE_DESC = "(L" + PROCEDURE + ";L" + ENVIRONMENT + ";[Ljava/lang/Object;)" + OBJECT_DESC;
+    /**
+     * after this many deoptimizations a lambda is compiled without speculating on called globals
+     */
+    private static final int MAX_DEOPTIMIZATIONS = 4;
+
+    /**
+     * standard procedures inlined as static calls, by name and argument count
+     */
+    private static final Map<String, String[]> intrinsics = Map.of(
+            "+", new String[]{NUMERIC, "plus", "(" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC},
+            "-", new String[]{NUMERIC, "minus", "(" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC},
+            "*", new String[]{NUMERIC, "multiply", "(" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC},
+            "<", new String[]{NUMERIC, "lessThan", "(" + OBJECT_DESC + OBJECT_DESC + ")Z"},
+            ">", new String[]{NUMERIC, "lessThan", "(" + OBJECT_DESC + OBJECT_DESC + ")Z", "swap"},
+            "<=", new String[]{NUMERIC, "lessOrEqual", "(" + OBJECT_DESC + OBJECT_DESC + ")Z"},
+            ">=", new String[]{NUMERIC, "lessOrEqual", "(" + OBJECT_DESC + OBJECT_DESC + ")Z", "swap"},
+            "=", new String[]{NUMERIC, "equal", "(" + OBJECT_DESC + OBJECT_DESC + ")Z"},
+            "car", new String[]{ENVIRONMENT, "car", "(" + OBJECT_DESC + ")" + OBJECT_DESC},
+            "cdr", new String[]{ENVIRONMENT, "cdr", "(" + OBJECT_DESC + ")" + OBJECT_DESC});
+
+    private static final int SELF = 1;
+    private static final int GLOBAL = 2;
+    private static final int ARGS = 3;
+    private static final int FIRST_SLOT = 4;
+
+    private final Node.LambdaNode lambda;
+    private final Environment global;
+    private final boolean speculate;
+    private final Set<Symbol> assigned = new HashSet<>();
+    private final List<Object> constants = new ArrayList<>();
+    private MethodVisitor mv;
+    private final Label start = new Label();
+    private int nextTemp;
+
+    private Compiler(@NotNull Node.LambdaNode lambda, @NotNull Environment global) {
+        this.lambda = lambda;
+        this.global = global;
+        this.speculate = lambda.deoptimizations.get() < MAX_DEOPTIMIZATIONS;
+        this.nextTemp = FIRST_SLOT + lambda.frameSize;
+        collectAssigned(lambda.body, assigned);
+    }
+
+    /**
+     * @param global environment whose current bindings the code may speculate on
+     * @return null when the lambda can not be compiled
+     */
+    static CompiledBody compile(@NotNull Node.LambdaNode lambda, @NotNull Environment global) {
+        if (lambda.variadic || !supported(lambda.body)) { return null; }
+        return new Compiler(lambda, global).generate();
+    }
+
+    private static boolean supported(@NotNull Node n) {
+        if (n instanceof Node.Constant || n instanceof Node.LocalRef || n instanceof Node.GlobalRef) { return true; }
+        else if (n instanceof Node.LocalSet) { return supported(((Node.LocalSet) n).value); }
+        else if (n instanceof Node.GlobalSet) { return supported(((Node.GlobalSet) n).value); }
+        else if (n instanceof Node.LocalDefine) { return supported(((Node.LocalDefine) n).value); }
+        else if (n instanceof Node.GlobalDefine) { return supported(((Node.GlobalDefine) n).value); }
+        else if (n instanceof Node.If) {
+            var i = (Node.If) n;
+            return supported(i.test) && supported(i.consequence) && supported(i.alternative);
+        }
+        else if (n instanceof Node.Begin) { return allSupported(((Node.Begin) n).body); }
+        else if (n instanceof Node.Call) {
+            var c = (Node.Call) n;
+            return supported(c.operator) && allSupported(c.operands);
+        }
+        else { return false; }
+    }
+
+    private static boolean allSupported(@NotNull Node[] nodes) {
+        for (var n : nodes) {
+            if (!supported(n)) { return false; }
+        }
+        return true;
+    }
+
+    private CompiledBody generate() {
+        var cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return OBJECT;
+            }
+        };
+        cw.visit(V15, ACC_FINAL | ACC_SUPER, NAME, null, BODY, null);
+
+        var constructor = "([Ljava/lang/Object;L" + Type.getInternalName(Node.LambdaNode.class) + ";)V";
+        mv = cw.visitMethod(0, "<init>", constructor, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKESPECIAL, BODY, "<init>", constructor, false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(0, "invoke", INVOKE_DESC, null, null);
+        mv.visitCode();
+        for (int i = 0; i < lambda.parameterCount; i++) {
+            mv.visitVarInsn(ALOAD, ARGS);
+            pushInt(i);
+            mv.visitInsn(AALOAD);
+            mv.visitVarInsn(ASTORE, FIRST_SLOT + i);
+        }
+        clearDefinitions();
+        mv.visitLabel(start);
+        emitTail(lambda.body);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        try {
+            var hidden = lookup.defineHiddenClass(cw.toByteArray(), true);
+            var newInstance = hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class, Object[].class, Node.LambdaNode.class));
+            return (CompiledBody) newInstance.invoke(constants.toArray(), lambda);
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void clearDefinitions() {
+        for (int i = lambda.parameterCount; i < lambda.frameSize; i++) {
+            mv.visitFieldInsn(GETSTATIC, FRAME, "UNASSIGNED", OBJECT_DESC);
+            mv.visitVarInsn(ASTORE, FIRST_SLOT + i);
+        }
+    }
+
+    /**
+     * leaves the value of n on the operand stack
+     */
+    private void emit(@NotNull Node n) {
+        if (n instanceof Node.Constant) { pushConstant(((Node.Constant) n).value); }
+        else if (n instanceof Node.LocalRef) {
+            var r = (Node.LocalRef) n;
+            if (r.depth == 0) { mv.visitVarInsn(ALOAD, FIRST_SLOT + r.slot); }
+            else {
+                loadSlots(r.depth);
+                pushInt(r.slot);
+                mv.visitInsn(AALOAD);
+            }
+            if (r.checked) {
+                pushConstant(r.name);
+                mv.visitTypeInsn(CHECKCAST, SYMBOL);
+                mv.visitMethodInsn(INVOKESTATIC, BODY, "checkAssigned",
+                        "(" + OBJECT_DESC + "L" + SYMBOL + ";)" + OBJECT_DESC, false);
+            }
+        }
+        else if (n instanceof Node.GlobalRef) {
+            loadGlobal();
+            pushConstant(((Node.GlobalRef) n).name);
+            mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "lookup", "(" + OBJECT_DESC + ")" + OBJECT_DESC, false);
+        }
+        else if (n instanceof Node.LocalSet) {
+            var s = (Node.LocalSet) n;
+            if (s.depth == 0) {
+                emit(s.value);
+                mv.visitVarInsn(ASTORE, FIRST_SLOT + s.slot);
+            }
+            else {
+                loadSlots(s.depth);
+                pushInt(s.slot);
+                emit(s.value);
+                mv.visitInsn(AASTORE);
+            }
+            mv.visitInsn(ACONST_NULL);
+        }
+        else if (n instanceof Node.LocalDefine) {
+            var d = (Node.LocalDefine) n;
+            emit(d.value);
+            mv.visitVarInsn(ASTORE, FIRST_SLOT + d.slot);
+            mv.visitInsn(ACONST_NULL);
+        }
+        else if (n instanceof Node.GlobalSet) {
+            var s = (Node.GlobalSet) n;
+            loadGlobal();
+            pushConstant(s.name);
+            emit(s.value);
+            mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "assign", "(" + OBJECT_DESC + OBJECT_DESC + ")V", false);
+            mv.visitInsn(ACONST_NULL);
+        }
+        else if (n instanceof Node.GlobalDefine) {
+            var d = (Node.GlobalDefine) n;
+            loadGlobal();
+            pushConstant(d.name);
+            emit(d.value);
+            mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "put", "(" + OBJECT_DESC + OBJECT_DESC + ")V", false);
+            mv.visitInsn(ACONST_NULL);
+        }
+        else if (n instanceof Node.If) {
+            var i = (Node.If) n;
+            var alternative = new Label();
+            var end = new Label();
+            emitTest(i.test, alternative);
+            emit(i.consequence);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(alternative);
+            emit(i.alternative);
+            mv.visitLabel(end);
+        }
+        else if (n instanceof Node.Begin) {
+            var body = ((Node.Begin) n).body;
+            for (int i = 0; i < body.length - 1; i++) {
+                emit(body[i]);
+                mv.visitInsn(POP);
+            }
+            emit(body[body.length - 1]);
+        }
+        else if (n instanceof Node.Call) {
+            var c = (Node.Call) n;
+            var intrinsic = intrinsic(c);
+            if (intrinsic != null) {
+                emitIntrinsic(c, intrinsic);
+                if (intrinsic[2].endsWith("Z")) {
+                    mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+                }
+                return;
+            }
+            var callee = speculatedCallee(c);
+            if (callee instanceof Procedure && ((Procedure) callee).lambda() == lambda
+                    && c.operands.length == lambda.parameterCount) {
+                mv.visitVarInsn(ALOAD, 0);
+                pushConstant(callee);
+                mv.visitTypeInsn(CHECKCAST, PROCEDURE);
+                mv.visitVarInsn(ALOAD, GLOBAL);
+                emitArguments(c.operands);
+                mv.visitMethodInsn(INVOKEVIRTUAL, BODY, "reenter", INVOKE_DESC, false);
+                return;
+            }
+            emitOperator(c);
+            mv.visitVarInsn(ALOAD, GLOBAL);
+            emitArguments(c.operands);
+            invokeCall();
+        }
+        else { throw new IllegalStateException(n.getClass().getName()); }
+    }
+
+    /**
+     * returns the value of n from the generated method
+     */
+    private void emitTail(@NotNull Node n) {
+        if (n instanceof Node.If) {
+            var i = (Node.If) n;
+            var alternative = new Label();
+            emitTest(i.test, alternative);
+            emitTail(i.consequence);
+            mv.visitLabel(alternative);
+            emitTail(i.alternative);
+        }
+        else if (n instanceof Node.Begin) {
+            var body = ((Node.Begin) n).body;
+            for (int i = 0; i < body.length - 1; i++) {
+                emit(body[i]);
+                mv.visitInsn(POP);
+            }
+            emitTail(body[body.length - 1]);
+        }
+        else if (n instanceof Node.Call) {
+            var c = (Node.Call) n;
+            int operator = nextTemp++;
+            int args = nextTemp++;
+            if (intrinsic(c) != null) {
+                emit(n);
+                mv.visitInsn(ARETURN);
+                return;
+            }
+            var generic = new Label();
+            var deoptimized = new Label();
+            emitOperator(c);
+            mv.visitVarInsn(ASTORE, operator);
+            emitArguments(c.operands);
+            mv.visitVarInsn(ASTORE, args);
+            mv.visitVarInsn(ALOAD, operator);
+            mv.visitVarInsn(ALOAD, SELF);
+            mv.visitJumpInsn(IF_ACMPNE, generic);
+            if (c.operands.length == lambda.parameterCount) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, BODY, "valid", "Z");
+                mv.visitJumpInsn(IFEQ, deoptimized);
+                for (int i = 0; i < lambda.parameterCount; i++) {
+                    mv.visitVarInsn(ALOAD, args);
+                    pushInt(i);
+                    mv.visitInsn(AALOAD);
+                    mv.visitVarInsn(ASTORE, FIRST_SLOT + i);
+                }
+                clearDefinitions();
+                mv.visitJumpInsn(GOTO, start);
+                mv.visitLabel(deoptimized);
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, SELF);
+                mv.visitVarInsn(ALOAD, GLOBAL);
+                mv.visitVarInsn(ALOAD, args);
+                mv.visitMethodInsn(INVOKEVIRTUAL, BODY, "resume", INVOKE_DESC, false);
+                mv.visitInsn(ARETURN);
+            }
+            mv.visitLabel(generic);
+            mv.visitVarInsn(ALOAD, operator);
+            mv.visitVarInsn(ALOAD, args);
+            mv.visitMethodInsn(INVOKESTATIC, BODY, "tailCall",
+                    "(" + OBJECT_DESC + "[Ljava/lang/Object;)" + OBJECT_DESC, false);
+            mv.visitInsn(ARETURN);
+        }
+        else {
+            emit(n);
+            mv.visitInsn(ARETURN);
+        }
+    }
+
+    private void emitTest(@NotNull Node test, @NotNull Label alternative) {
+        if (test instanceof Node.Call) {
+            var intrinsic = intrinsic((Node.Call) test);
+            if (intrinsic != null && intrinsic[2].endsWith("Z")) {
+                emitIntrinsic((Node.Call) test, intrinsic);
+                mv.visitJumpInsn(IFEQ, alternative);
+                return;
+            }
+        }
+        emit(test);
+        mv.visitMethodInsn(INVOKESTATIC, UTILS, "isTrue", "(" + OBJECT_DESC + ")Z", false);
+        mv.visitJumpInsn(IFEQ, alternative);
+    }
+
+    private void emitArguments(@NotNull Node[] operands) {
+        pushInt(operands.length);
+        mv.visitTypeInsn(ANEWARRAY, OBJECT);
+        for (int i = 0; i < operands.length; i++) {
+            mv.visitInsn(DUP);
+            pushInt(i);
+            emit(operands[i]);
+            mv.visitInsn(AASTORE);
+        }
+    }
+
+    /**
+     * @return owner, name, descriptor and optionally "swap" of the static method implementing the call,
+     * or null when the operator is not a standard procedure that is still bound to its global
+     */
+    private String[] intrinsic(@NotNull Node.Call c) {
+        if (!speculates(c)) { return null; }
+        var name = ((Node.GlobalRef) c.operator).name;
+        var intrinsic = intrinsics.get(name.str);
+        if (intrinsic == null || !global.isBuiltin(name, global.sharedValue(name))) { return null; }
+        int arity = Type.getArgumentTypes(intrinsic[2]).length;
+        if (c.operands.length != arity) { return null; }
+        global.dependOn(name, lambda);
+        return intrinsic;
+    }
+
+    private void emitIntrinsic(@NotNull Node.Call c, @NotNull String[] intrinsic) {
+        for (var operand : c.operands) emit(operand);
+        if (intrinsic.length > 3) { mv.visitInsn(SWAP); }
+        mv.visitMethodInsn(INVOKESTATIC, intrinsic[0], intrinsic[1], intrinsic[2], false);
+    }
+
+    /**
+     * @return current value of a global operator that the code may treat as a constant
+     */
+    private Object speculatedCallee(@NotNull Node.Call c) {
+        if (!speculates(c)) { return null; }
+        var name = ((Node.GlobalRef) c.operator).name;
+        var value = global.sharedValue(name);
+        if (!(value instanceof Lambda)) { return null; }
+        global.dependOn(name, lambda);
+        return value;
+    }
+
+    /**
+     * globals assigned by the lambda itself are always looked up, a running activation is not deoptimized
+     */
+    private boolean speculates(@NotNull Node.Call c) {
+        return speculate && c.operator instanceof Node.GlobalRef
+                && !assigned.contains(((Node.GlobalRef) c.operator).name);
+    }
+
+    private static void collectAssigned(@NotNull Node n, @NotNull Set<Symbol> names) {
+        if (n instanceof Node.GlobalSet) {
+            names.add(((Node.GlobalSet) n).name);
+            collectAssigned(((Node.GlobalSet) n).value, names);
+        }
+        else if (n instanceof Node.GlobalDefine) {
+            names.add(((Node.GlobalDefine) n).name);
+            collectAssigned(((Node.GlobalDefine) n).value, names);
+        }
+        else if (n instanceof Node.LocalSet) { collectAssigned(((Node.LocalSet) n).value, names); }
+        else if (n instanceof Node.LocalDefine) { collectAssigned(((Node.LocalDefine) n).value, names); }
+        else if (n instanceof Node.If) {
+            var i = (Node.If) n;
+            collectAssigned(i.test, names);
+            collectAssigned(i.consequence, names);
+            collectAssigned(i.alternative, names);
+        }
+        else if (n instanceof Node.Begin) {
+            for (var b : ((Node.Begin) n).body) collectAssigned(b, names);
+        }
+        else if (n instanceof Node.Call) {
+            collectAssigned(((Node.Call) n).operator, names);
+            for (var o : ((Node.Call) n).operands) collectAssigned(o, names);
+        }
+    }
+
+    private void emitOperator(@NotNull Node.Call c) {
+        var callee = speculatedCallee(c);
+        if (callee != null) { pushConstant(callee); }
+        else { emit(c.operator); }
+    }
+
+    private void invokeCall() {
+        mv.visitMethodInsn(INVOKESTATIC, BODY, "call",
+                "(" + OBJECT_DESC + "L" + ENVIRONMENT + ";[Ljava/lang/Object;)" + OBJECT_DESC, false);
+    }
+
+    private void loadGlobal() {
+        mv.visitVarInsn(ALOAD, GLOBAL);
+    }
+
+    /**
+     * the captured frame of the procedure is at depth 1, the frame of the call itself lives in locals
+     */
+    private void loadSlots(int depth) {
+        mv.visitVarInsn(ALOAD, SELF);
+        mv.visitMethodInsn(INVOKEINTERFACE, PROCEDURE, "environment", "()L" + FRAME + ";", true);
+        for (int d = depth; d > 1; d--) {
+            mv.visitFieldInsn(GETFIELD, FRAME, "outer", "L" + FRAME + ";");
+        }
+        mv.visitFieldInsn(GETFIELD, FRAME, "slots", "[Ljava/lang/Object;");
+    }
+
+    private void pushConstant(Object value) {
+        if (value == null) {
+            mv.visitInsn(ACONST_NULL);
+            return;
+        }
+        int index = constants.indexOf(value);
+        if (index < 0 || constants.get(index) != value) {
+            index = constants.size();
+            constants.add(value);
+        }
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, BODY, "constants", "[Ljava/lang/Object;");
+        pushInt(index);
+        mv.visitInsn(AALOAD);
+    }
+
+    private void pushInt(int i) {
+        if (i >= -1 && i <= 5) { mv.visitInsn(ICONST_0 + i); }
+        else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) { mv.visitIntInsn(BIPUSH, i); }
+        else if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) { mv.visitIntInsn(SIPUSH, i); }
+        else { mv.visitLdcInsn(i); }
+    }
+}
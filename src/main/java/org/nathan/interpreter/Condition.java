@@ -0,0 +1,24 @@
+package org.nathan.interpreter;
+
+import static org.nathan.interpreter.Jispy.evalToString;
+
+/**
+ * object raised by a script without a handler to call, carried up the Java stack to the innermost guard
+ */
+class Condition extends RuntimeException {
+    final Object payload;
+
+    Condition(Object payload) {
+        this.payload = payload;
+    }
+
+    @Override
+    public String getMessage() {
+        return "raised " + evalToString(payload);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return Jispy.debug ? super.fillInStackTrace() : this;
+    }
+}
@@ -0,0 +1,11 @@
+package org.nathan.interpreter;
+
+/**
+ * unwinds the Java stack for a non-local exit. it is part of normal control flow, so it never records
+ * a stack trace, and guards and handlers let it pass
+ */
+abstract class ControlSignal extends RuntimeException {
+    ControlSignal(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -4,7 +4,16 @@ import org.apache.commons.math3.complex.Complex;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import static org.nathan.interpreter.Jispy.*;
 import static org.nathan.interpreter.NumericOperators.*;
@@ -12,67 +21,270 @@ import static org.nathan.interpreter.Utils.isNil;
 
 
 
-class Environment extends HashMap<Object, Object> {
-
-    private Environment outer;
+/**
+ * global bindings, held in a {@link PersistentMap} so that forking an environment is O(1) and a define
+ * in one fork copies only the changed path. forks share the tiering state: builtins, speculation
+ * dependents and the names whose value differs between forks
+ */
+class Environment {
 
     private static final boolean DEBUG = false;
+    private static final Object UNBOUND = new Object();
+    /**
+     * environment of the expression evaluated on this thread, for procedures called by builtins
+     */
+    private static final ThreadLocal<Environment> current = new ThreadLocal<>();
+    private static final VarHandle BINDINGS;
 
-    Environment(@NotNull Object params, @NotNull List<Object> args, Environment outer) {
-        this.outer = outer;
-        if (params instanceof Symbol) {
-            put(params, args);
+    static {
+        try {
+            BINDINGS = MethodHandles.lookup().findVarHandle(Environment.class, "bindings", PersistentMap.class);
         }
-        else {
-            List<Object> p = (List<Object>) params;
-            if (p.size() == args.size()) {
-                var pi = p.iterator();
-                var ai = args.iterator();
-                while (pi.hasNext()) {
-                    put(pi.next(), ai.next());
-                }
-            }
-            else {
-                throw new TypeException(String.format("'expected %s, given %s",
-                        evalToString(params),
-                        evalToString(args)));
-            }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
         }
     }
 
+    /**
+     * frame of top level expressions, it has no slots of its own
+     */
+    final Frame root = new Frame(this);
+    /**
+     * replaced by compare and set, futures and parallel workers define globals from other threads
+     */
+    private volatile PersistentMap bindings;
+    /**
+     * set when sessions share this environment, it can not define anything any more
+     */
+    volatile boolean frozen = false;
+
+    /**
+     * hot lambdas are promoted to bytecode compiled by {@link Compiler} when set
+     */
+    boolean compiling = true;
+    /**
+     * interpreted invocations plus back edges after which a lambda is compiled
+     */
+    int tierThreshold = 1000;
+    /**
+     * evaluation runs on {@link Machine}, with continuations on the heap
+     */
+    boolean stackless = false;
+    /**
+     * counters exposed through JMX, null while the interpreter is not registered
+     */
+    InterpreterMetrics metrics;
+    /**
+     * workers of the parallel builtins, the common pool when null
+     */
+    ForkJoinPool pool;
+    /**
+     * most elements processed by one task of the parallel builtins
+     */
+    int splitThreshold = 64;
+    /**
+     * runs futures, virtual threads when null and available
+     */
+    Executor executor;
+
+    /**
+     * the standard procedures as they were before any redefinition
+     */
+    private final PersistentMap builtins;
+    /**
+     * compiled lambdas that speculated on the current value of a global, shared by forks
+     */
+    private final Map<Object, Set<Node.LambdaNode>> dependents;
+    /**
+     * globals defined after the first fork, compiled code can not assume their value
+     */
+    private final Set<Object> shadowed;
+    /**
+     * set in every environment of a family once it has been forked
+     */
+    private final AtomicBoolean forked;
+    /**
+     * environment whose globals this one reads as they change unless it defined them itself, or null
+     */
+    private final Environment parent;
+
     Environment(@NotNull List<Map.Entry<Object, Object>> entries) {
+        dependents = new ConcurrentHashMap<>();
+        shadowed = ConcurrentHashMap.newKeySet();
+        forked = new AtomicBoolean();
+        parent = null;
+        bindings = PersistentMap.EMPTY;
         for (var e : entries) {
             this.put(e.getKey(), e.getValue());
         }
+        builtins = bindings;
+    }
+
+    /**
+     * @param origin environment whose tiering state and settings the fork shares
+     * @param bindings globals of the fork
+     */
+    Environment(@NotNull Environment origin, @NotNull PersistentMap bindings) {
+        origin.forked.set(true);
+        this.bindings = bindings;
+        dependents = origin.dependents;
+        shadowed = origin.shadowed;
+        forked = origin.forked;
+        parent = null;
+        builtins = origin.builtins;
+        compiling = origin.compiling;
+        tierThreshold = origin.tierThreshold;
+        stackless = origin.stackless;
+        pool = origin.pool;
+        splitThreshold = origin.splitThreshold;
+        executor = origin.executor;
+    }
+
+    /**
+     * private globals over those of parent, as an actor has. unlike a fork it does not mark parent forked,
+     * only the names defined in it are shadowed, as the other globals are the same in both
+     */
+    Environment(@NotNull Environment parent) {
+        this.parent = parent;
+        bindings = PersistentMap.EMPTY;
+        dependents = parent.dependents;
+        shadowed = parent.shadowed;
+        forked = new AtomicBoolean(true);
+        builtins = parent.builtins;
+        compiling = parent.compiling;
+        tierThreshold = parent.tierThreshold;
+        stackless = parent.stackless;
+        pool = parent.pool;
+        splitThreshold = parent.splitThreshold;
+        executor = parent.executor;
+    }
+
+    /**
+     * @return immutable current globals, without those of parent
+     */
+    @NotNull PersistentMap bindings() {
+        return bindings;
+    }
+
+    static Environment current() {
+        return current.get();
+    }
+
+    /**
+     * runs evaluation with this as the environment of {@link #current()}
+     */
+    <T> T enter(@NotNull Supplier<T> evaluation) {
+        var previous = current.get();
+        if (previous == this) { return evaluation.get(); }
+        current.set(this);
+        try {
+            return evaluation.get();
+        }
+        finally {
+            current.set(previous);
+        }
+    }
+
+    @NotNull PersistentMap builtins() {
+        return builtins;
+    }
+
+    Object builtin(@NotNull Object name) {
+        return builtins.get(name, null);
+    }
+
+    boolean isBuiltin(@NotNull Object name, Object value) {
+        return value != null && builtins.get(name, null) == value;
     }
 
+    Object get(@NotNull Object name) {
+        var value = bindings.get(name, UNBOUND);
+        if (value != UNBOUND) { return value; }
+        return parent == null ? null : parent.get(name);
+    }
+
+    boolean containsKey(@NotNull Object name) {
+        return bindings.get(name, UNBOUND) != UNBOUND || parent != null && parent.containsKey(name);
+    }
 
-    Environment find(@NotNull Object o) {
+    /**
+     * @return value of name that is the same in every fork, null if there is none
+     */
+    Object sharedValue(@NotNull Object name) {
+        if (shadowed.contains(name)) { return null; }
+        return get(name);
+    }
+
+    void dependOn(@NotNull Object name, @NotNull Node.LambdaNode lambda) {
+        dependents.computeIfAbsent(name, k -> ConcurrentHashMap.newKeySet()).add(lambda);
+    }
+
+    void put(@NotNull Object name, Object value) {
+        if (frozen) { throw new IllegalStateException("global environment is shared by sessions"); }
+        if (forked.get()) { shadowed.add(name); }
+        if (!dependents.isEmpty()) {
+            var lambdas = dependents.remove(name);
+            if (lambdas != null) {
+                for (var l : lambdas) l.deoptimize();
+            }
+        }
+        PersistentMap old;
+        do {
+            old = bindings;
+        } while (!BINDINGS.compareAndSet(this, old, old.put(name, value)));
+    }
+
+    Object lookup(@NotNull Object o) {
         if (DEBUG) {
             System.out.println(String.format("find symbol: <%s> in %s", o, this.hashCode()));
         }
-        if (containsKey(o)) { return this; }
-        else if (outer == null) { throw new LookUpException(o.toString()); }
-        else { return outer.find(o); }
+        var value = bindings.get(o, UNBOUND);
+        if (value != UNBOUND) { return value; }
+        else if (parent != null) { return parent.lookup(o); }
+        throw new LookUpException(o.toString());
+    }
 
+    void assign(@NotNull Object o, Object value) {
+        if (!containsKey(o)) { throw new LookUpException(o.toString()); }
+        put(o, value);
     }
 
     @Override
     public String toString() {
         var s = new StringBuilder();
-        for (var i : entrySet()) {
-            s.append(String.format("%s\n", i.getKey().toString()));
-        }
-        s.append("\nouter:\n");
-        if (outer != null) {
-            s.append(outer.toString());
-        }
+        bindings.forEach((k, v) -> s.append(String.format("%s\n", k.toString())));
         return s.toString();
     }
 
+    static Object car(Object t) {
+        if (t instanceof Pair) { return ((Pair) t).car; }
+        return ((List<Object>) t).get(0);
+    }
+
+    static Object cdr(Object t) {
+        if (t instanceof Pair) { return ((Pair) t).cdr; }
+        var l = (List<Object>) t;
+        return l.subList(1, l.size());
+    }
+
+    private static final Lambda eq = args -> {
+        if (args.size() != 2) { throw new ArgumentsCountException(); }
+        return args.get(0) == args.get(1);
+    };
+    private static final Lambda eqv = args -> {
+        if (args.size() != 2) { throw new ArgumentsCountException(); }
+        var a = args.get(0);
+        var b = args.get(1);
+        return a == b || (a instanceof Number || a instanceof Complex) && a.equals(b);
+    };
+    private static final Lambda equal = args -> {
+        if (args.size() != 2) { throw new ArgumentsCountException(); }
+        return Utils.isEqual(args.get(0), args.get(1));
+    };
+
     static Environment NewStandardEnv() {
         List<Map.Entry<Object, Object>> m = Arrays.asList(
-                Map.entry(new Symbol("+"), (Lambda) args -> {
+                Map.entry(Symbol.of("+"), (Lambda) args -> {
                     if (args.size() < 1) { throw new ArgumentsCountException(); }
                     if (args.size() == 1) {
                         var val = args.get(0);
@@ -86,7 +298,7 @@ class Environment extends HashMap<Object, Object> {
                         return res.get();
                     }
                 }),
-                Map.entry(new Symbol("-"), (Lambda) args ->
+                Map.entry(Symbol.of("-"), (Lambda) args ->
                 {
                     if (args.size() != 1 && args.size() != 2) { throw new ArgumentsCountException(); }
                     if (args.size() == 1) {
@@ -100,42 +312,42 @@ class Environment extends HashMap<Object, Object> {
                         return minus(args.get(0), args.get(1));
                     }
                 }),
-                Map.entry(new Symbol("*"), (Lambda) args ->
+                Map.entry(Symbol.of("*"), (Lambda) args ->
                 {
                     if (args.size() < 2) { throw new ArgumentsCountException(); }
                     return args.stream().reduce(NumericOperators::multiply).get();
                 }),
-                Map.entry(new Symbol("/"), (Lambda) (args ->
+                Map.entry(Symbol.of("/"), (Lambda) (args ->
                 {
                     if (args.size() != 2) { throw new ArgumentsCountException(); }
                     return divide(args.get(0), args.get(1));
                 })),
-                Map.entry(new Symbol(">"), (Lambda) (args ->
+                Map.entry(Symbol.of(">"), (Lambda) (args ->
                 {
                     if (args.size() != 2) { throw new ArgumentsCountException(); }
                     return lessThan(args.get(1), args.get(0));
                 })),
-                Map.entry(new Symbol("<"), (Lambda) (args ->
+                Map.entry(Symbol.of("<"), (Lambda) (args ->
                 {
                     if (args.size() != 2) { throw new ArgumentsCountException(); }
                     return lessThan(args.get(0), args.get(1));
                 })),
-                Map.entry(new Symbol(">="), (Lambda) (args ->
+                Map.entry(Symbol.of(">="), (Lambda) (args ->
                 {
                     if (args.size() != 2) { throw new ArgumentsCountException(); }
                     return lessOrEqual(args.get(1), args.get(0));
                 })),
-                Map.entry(new Symbol("<="), (Lambda) (args ->
+                Map.entry(Symbol.of("<="), (Lambda) (args ->
                 {
                     if (args.size() != 2) { throw new ArgumentsCountException(); }
                     return lessOrEqual(args.get(0), args.get(1));
                 })),
-                Map.entry(new Symbol("="), (Lambda) (args ->
+                Map.entry(Symbol.of("="), (Lambda) (args ->
                 {
                     if (args.size() != 2) { throw new ArgumentsCountException(); }
                     return equal(args.get(0), args.get(1));
                 })),
-                Map.entry(new Symbol("abs"), (Lambda) (args ->
+                Map.entry(Symbol.of("abs"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     if (value(args.get(0)) >= 0) {
@@ -145,159 +357,409 @@ class Environment extends HashMap<Object, Object> {
                         return negative(args.get(0));
                     }
                 })),
-                Map.entry(new Symbol("append"), (Lambda) (args ->
+                Map.entry(Symbol.of("append"), (Lambda) (args ->
                 {
                     if (args.size() < 2) { throw new ArgumentsCountException(); }
-                    List<Object> res = new ArrayList<>((List<Object>) args.get(0));
-                    for (int i = 1; i < args.size(); i++) {
-                        res.addAll((List<Object>) args.get(i));
+                    var res = (List<Object>) args.get(args.size() - 1);
+                    for (int i = args.size() - 2; i >= 0; i--) {
+                        res = Pair.append((List<Object>) args.get(i), res);
                     }
                     return res;
                 })),
-                Map.entry(new Symbol("apply"), (Lambda) (args ->
+                Map.entry(Symbol.of("apply"), (Lambda) (args ->
                 {
                     Object proc = args.get(0);
                     return ((Lambda) proc).apply(args.subList(1, args.size()));
                 })),
-                Map.entry(new Symbol("begin"), (Lambda) (args -> args.get(args.size() - 1))),
-                Map.entry(new Symbol("car"), (Lambda) (args ->
+                Map.entry(Symbol.of("begin"), (Lambda) (args -> args.get(args.size() - 1))),
+                Map.entry(Symbol.of("car"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
-                    return ((List<Object>) args.get(0)).get(0);
+                    return car(args.get(0));
                 })),
-                Map.entry(new Symbol("cdr"), (Lambda) (args ->
+                Map.entry(Symbol.of("cdr"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
-                    var t = (List<Object>) (args.get(0));
-                    return t.subList(1, t.size());
-                })),
-                Map.entry(new Symbol("cons"), (Lambda) (args ->
-                {
-                    if (args.size() != 2) { throw new ArgumentsCountException(); }
-                    var content = (Collection<?>) args.get(1);
-                    List<Object> t = new ArrayList<>(content.size()+1);
-                    t.add(args.get(0));
-                    t.addAll(content);
-                    return t;
+                    return cdr(args.get(0));
                 })),
-                Map.entry(new Symbol("eq?"), (Lambda) (args ->
+                Map.entry(Symbol.of("cons"), (Lambda) (args ->
                 {
                     if (args.size() != 2) { throw new ArgumentsCountException(); }
-                    return args.get(0) == args.get(1);
+                    return Pair.cons(args.get(0), (List<?>) args.get(1));
                 })),
-                Map.entry(new Symbol("expt"), (Lambda) (args ->
+                Map.entry(Symbol.of("eq?"), eq),
+                Map.entry(Symbol.of("eqv?"), eqv),
+                Map.entry(Symbol.of("expt"), (Lambda) (args ->
                 {
                     if (args.size() != 2) { throw new ArgumentsCountException(); }
                     return Math.pow(value(args.get(0)), value(args.get(1)));
                 })),
-                Map.entry(new Symbol("equal?"), (Lambda) (args ->
-                {
-                    if (args.size() != 2) { throw new ArgumentsCountException(); }
-                    return args.get(0).equals(args.get(1));
-                })),
-                Map.entry(new Symbol("length"), (Lambda) (args ->
+                Map.entry(Symbol.of("equal?"), equal),
+                Map.entry(Symbol.of("length"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return ((List<Object>) args.get(0)).size();
                 })),
-                Map.entry(new Symbol("list"), (Lambda) (args ->
+                Map.entry(Symbol.of("list"), (Lambda) (args ->
                 {
                     if (args.size() < 1) { throw new ArgumentsCountException(); }
-                    return new ArrayList<>(args);
+                    return Pair.fromList(args);
                 })),
-                Map.entry(new Symbol("list?"), (Lambda) (args ->
+                Map.entry(Symbol.of("list?"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return args.get(0) instanceof List;
                 })),
-                Map.entry(new Symbol("map"), (Lambda) (args -> {
+                Map.entry(Symbol.of("map"), (Lambda) (args -> {
                     if (args.size() < 1) { throw new ArgumentsCountException(); }
                     Lambda proc = (Lambda) (args.get(0));
-                    var lists = args.subList(1, args.size());
+                    var lists = new Iterator<?>[args.size() - 1];
+                    for (int i = 0; i < lists.length; i++) lists[i] = ((List<?>) args.get(i + 1)).iterator();
                     var res = new ArrayList<>();
                     while (true) {
-                        List<Object> vals = new ArrayList<>(lists.size());
-                        for (int i = 0; i < lists.size(); i++) {
-                            if (!isNil(lists.get(i))) {
-                                var list = (List<Object>) (lists.get(i));
-                                vals.add(list.get(0));
-                                lists.set(i, list.subList(1, list.size()));
-                            }
-                        }
-                        if (vals.size() == lists.size()) {
-                            res.add(proc.apply(vals));
+                        var vals = new Object[lists.length];
+                        for (int i = 0; i < lists.length; i++) {
+                            if (!lists[i].hasNext()) { return Pair.fromList(res); }
+                            vals[i] = lists[i].next();
                         }
-                        else {
-                            break;
+                        res.add(proc.apply(Arrays.asList(vals)));
+                    }
+                })),
+                Map.entry(Symbol.of("pmap"), (Lambda) (args -> {
+                    if (args.size() < 2) { throw new ArgumentsCountException(); }
+                    return Parallel.map((Lambda) args.get(0), args.subList(1, args.size()));
+                })),
+                Map.entry(Symbol.of("pfor-each"), (Lambda) (args -> {
+                    if (args.size() < 2) { throw new ArgumentsCountException(); }
+                    Parallel.forEach((Lambda) args.get(0), args.subList(1, args.size()));
+                    return null;
+                })),
+                Map.entry(Symbol.of("preduce"), (Lambda) (args -> {
+                    if (args.size() != 3) { throw new ArgumentsCountException(); }
+                    return Parallel.reduce((Lambda) args.get(0), args.get(1), (List<?>) args.get(2));
+                })),
+                Map.entry(Symbol.of("future"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return Futures.future((Lambda) args.get(0));
+                })),
+                Map.entry(Symbol.of("future?"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return args.get(0) instanceof CompletableFuture;
+                })),
+                Map.entry(Symbol.of("touch"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return Futures.touch(args.get(0));
+                })),
+                Map.entry(Symbol.of("await"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return Futures.touch(args.get(0));
+                })),
+                Map.entry(Symbol.of("spawn"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    Futures.spawn((Lambda) args.get(0));
+                    return null;
+                })),
+                Map.entry(Symbol.of("sleep"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    Futures.sleep(args.get(0));
+                    return null;
+                })),
+                Map.entry(Symbol.of("spawn-actor"), (Lambda) (args -> {
+                    if (args.size() != 1 && args.size() != 2) { throw new ArgumentsCountException(); }
+                    int capacity = args.size() == 2 ? (int) value(args.get(1)) : Actor.DEFAULT_CAPACITY;
+                    return Actor.spawn((Lambda) args.get(0), capacity);
+                })),
+                Map.entry(Symbol.of("send"), (Lambda) (args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    return ((Actor) args.get(0)).send(args.get(1));
+                })),
+                Map.entry(Symbol.of("receive"), (Lambda) (args -> {
+                    if (args.size() > 2) { throw new ArgumentsCountException(); }
+                    long timeout = args.isEmpty() ? -1 : (long) value(args.get(0));
+                    return Actor.receive(timeout, args.size() == 2 ? args.get(1) : null);
+                })),
+                Map.entry(Symbol.of("self"), (Lambda) (args -> {
+                    if (!args.isEmpty()) { throw new ArgumentsCountException(); }
+                    return Actor.self();
+                })),
+                Map.entry(Symbol.of("actor?"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return args.get(0) instanceof Actor;
+                })),
+                Map.entry(Symbol.of("make-vector"), (Lambda) (args -> {
+                    if (args.size() != 1 && args.size() != 2) { throw new ArgumentsCountException(); }
+                    var v = new Object[Vectors.size(args.get(0))];
+                    if (args.size() == 2) { Arrays.fill(v, args.get(1)); }
+                    return v;
+                })),
+                Map.entry(Symbol.of("vector"), (Lambda) (args -> args.toArray())),
+                Map.entry(Symbol.of("vector?"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return Vectors.isVector(args.get(0));
+                })),
+                Map.entry(Symbol.of("vector-length"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return Vectors.length(args.get(0));
+                })),
+                Map.entry(Symbol.of("vector-ref"), (Lambda) (args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    return Vectors.ref(args.get(0), Vectors.index(args.get(0), args.get(1)));
+                })),
+                Map.entry(Symbol.of("vector-set!"), (Lambda) (args -> {
+                    if (args.size() != 3) { throw new ArgumentsCountException(); }
+                    Vectors.set(args.get(0), Vectors.index(args.get(0), args.get(1)), args.get(2));
+                    return null;
+                })),
+                Map.entry(Symbol.of("vector-fill!"), (Lambda) (args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    Vectors.fill(args.get(0), args.get(1));
+                    return null;
+                })),
+                Map.entry(Symbol.of("vector->list"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return Vectors.toList(args.get(0));
+                })),
+                Map.entry(Symbol.of("list->vector"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return ((List<?>) args.get(0)).toArray();
+                })),
+                Map.entry(Symbol.of("make-f64vector"), (Lambda) (args -> {
+                    if (args.size() != 1 && args.size() != 2) { throw new ArgumentsCountException(); }
+                    var v = new double[Vectors.size(args.get(0))];
+                    if (args.size() == 2) { Vectors.fill(v, args.get(1)); }
+                    return v;
+                })),
+                Map.entry(Symbol.of("f64vector"), (Lambda) Vectors::f64vectorOf),
+                Map.entry(Symbol.of("f64vector?"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return args.get(0) instanceof double[];
+                })),
+                Map.entry(Symbol.of("f64vector-length"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return Vectors.f64vector(args.get(0)).length;
+                })),
+                Map.entry(Symbol.of("f64vector-ref"), (Lambda) (args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    return Vectors.ref(Vectors.f64vector(args.get(0)), Vectors.index(args.get(0), args.get(1)));
+                })),
+                Map.entry(Symbol.of("f64vector-set!"), (Lambda) (args -> {
+                    if (args.size() != 3) { throw new ArgumentsCountException(); }
+                    Vectors.set(Vectors.f64vector(args.get(0)), Vectors.index(args.get(0), args.get(1)), args.get(2));
+                    return null;
+                })),
+                Map.entry(Symbol.of("make-s64vector"), (Lambda) (args -> {
+                    if (args.size() != 1 && args.size() != 2) { throw new ArgumentsCountException(); }
+                    var v = new long[Vectors.size(args.get(0))];
+                    if (args.size() == 2) { Vectors.fill(v, args.get(1)); }
+                    return v;
+                })),
+                Map.entry(Symbol.of("s64vector"), (Lambda) Vectors::s64vectorOf),
+                Map.entry(Symbol.of("s64vector?"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return args.get(0) instanceof long[];
+                })),
+                Map.entry(Symbol.of("s64vector-length"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return Vectors.s64vector(args.get(0)).length;
+                })),
+                Map.entry(Symbol.of("s64vector-ref"), (Lambda) (args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    return Vectors.ref(Vectors.s64vector(args.get(0)), Vectors.index(args.get(0), args.get(1)));
+                })),
+                Map.entry(Symbol.of("s64vector-set!"), (Lambda) (args -> {
+                    if (args.size() != 3) { throw new ArgumentsCountException(); }
+                    Vectors.set(Vectors.s64vector(args.get(0)), Vectors.index(args.get(0), args.get(1)), args.get(2));
+                    return null;
+                })),
+                Map.entry(Symbol.of("make-hash-table"), (Lambda) (args -> {
+                    if (args.size() > 1) { throw new ArgumentsCountException(); }
+                    var equivalence = args.isEmpty() ? equal : args.get(0);
+                    if (equivalence == eq) { return new HashTable(HashTable.Equivalence.EQ); }
+                    else if (equivalence == eqv) { return new HashTable(HashTable.Equivalence.EQV); }
+                    else if (equivalence == equal) { return new HashTable(HashTable.Equivalence.EQUAL); }
+                    throw new TypeException("hash tables compare keys with eq?, eqv? or equal?, given " +
+                            evalToString(equivalence));
+                })),
+                Map.entry(Symbol.of("hash-table?"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return args.get(0) instanceof HashTable;
+                })),
+                Map.entry(Symbol.of("hash-table-ref"), (Lambda) (args -> {
+                    if (args.size() != 2 && args.size() != 3) { throw new ArgumentsCountException(); }
+                    var table = (HashTable) args.get(0);
+                    var value = table.get(args.get(1), UNBOUND);
+                    if (value != UNBOUND) { return value; }
+                    else if (args.size() == 3) { return ((Lambda) args.get(2)).apply(Nil); }
+                    throw new LookUpException("no key " + evalToString(args.get(1)) + " in hash table");
+                })),
+                Map.entry(Symbol.of("hash-table-ref/default"), (Lambda) (args -> {
+                    if (args.size() != 3) { throw new ArgumentsCountException(); }
+                    return ((HashTable) args.get(0)).get(args.get(1), args.get(2));
+                })),
+                Map.entry(Symbol.of("hash-table-set!"), (Lambda) (args -> {
+                    if (args.size() != 3) { throw new ArgumentsCountException(); }
+                    ((HashTable) args.get(0)).put(args.get(1), args.get(2));
+                    return null;
+                })),
+                Map.entry(Symbol.of("hash-table-update!"), (Lambda) (args -> {
+                    if (args.size() != 3 && args.size() != 4) { throw new ArgumentsCountException(); }
+                    var table = (HashTable) args.get(0);
+                    var key = args.get(1);
+                    var value = table.get(key, UNBOUND);
+                    if (value == UNBOUND) {
+                        if (args.size() == 3) {
+                            throw new LookUpException("no key " + evalToString(key) + " in hash table");
                         }
+                        value = ((Lambda) args.get(3)).apply(Nil);
                     }
-                    return res;
-
+                    table.put(key, ((Lambda) args.get(2)).apply(Arrays.asList(value)));
+                    return null;
+                })),
+                Map.entry(Symbol.of("hash-table-update!/default"), (Lambda) (args -> {
+                    if (args.size() != 4) { throw new ArgumentsCountException(); }
+                    var table = (HashTable) args.get(0);
+                    var key = args.get(1);
+                    table.put(key, ((Lambda) args.get(2)).apply(Arrays.asList(table.get(key, args.get(3)))));
+                    return null;
+                })),
+                Map.entry(Symbol.of("hash-table-delete!"), (Lambda) (args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    ((HashTable) args.get(0)).remove(args.get(1));
+                    return null;
+                })),
+                Map.entry(Symbol.of("hash-table-contains?"), (Lambda) (args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    return ((HashTable) args.get(0)).containsKey(args.get(1));
+                })),
+                Map.entry(Symbol.of("hash-table-count"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return ((HashTable) args.get(0)).size();
                 })),
-                Map.entry(new Symbol("max"), (Lambda) (args -> args.stream().max((o1, o2) -> {
+                Map.entry(Symbol.of("hash-table-walk"), (Lambda) (args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    var proc = (Lambda) args.get(1);
+                    ((HashTable) args.get(0)).forEach((key, value) -> proc.apply(Arrays.asList(key, value)));
+                    return null;
+                })),
+                Map.entry(Symbol.of("hash-table-keys"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    var res = new ArrayList<>();
+                    ((HashTable) args.get(0)).forEach((key, value) -> res.add(key));
+                    return Pair.fromList(res);
+                })),
+                Map.entry(Symbol.of("hash-table-values"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    var res = new ArrayList<>();
+                    ((HashTable) args.get(0)).forEach((key, value) -> res.add(value));
+                    return Pair.fromList(res);
+                })),
+                Map.entry(Symbol.of("hash-table->alist"), (Lambda) (args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    var res = new ArrayList<>();
+                    ((HashTable) args.get(0)).forEach((key, value) -> res.add(Pair.cons(key, Pair.cons(value, Nil))));
+                    return Pair.fromList(res);
+                })),
+                Map.entry(Symbol.of("max"), (Lambda) (args -> args.stream().max((o1, o2) -> {
                     var t = value(o1) - value(o2);
                     if (t > 0) { return 1; }
                     else if (t < 0) { return -1; }
                     else { return 0; }
                 }))),
-                Map.entry(new Symbol("min"), (Lambda) (args -> args.stream().min((o1, o2) -> {
+                Map.entry(Symbol.of("min"), (Lambda) (args -> args.stream().min((o1, o2) -> {
                     var t = value(o1) - value(o2);
                     if (t > 0) { return 1; }
                     else if (t < 0) { return -1; }
                     else { return 0; }
                 }))),
-                Map.entry(new Symbol("not"), (Lambda) (args ->
+                Map.entry(Symbol.of("not"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return !(boolean) args.get(0);
                 })),
-                Map.entry(new Symbol("null?"), (Lambda) (args ->
+                Map.entry(Symbol.of("null?"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return isNil(args.get(0));
                 })),
-                Map.entry(new Symbol("number?"), (Lambda) (args ->
+                Map.entry(Symbol.of("number?"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
-                    return args.get(0) instanceof Integer ||
-                            args.get(0) instanceof Double ||
-                            args.get(0) instanceof Complex;
+                    return isNumber(args.get(0));
                 })),
-                Map.entry(new Symbol("print"), (Lambda) args -> {
+                Map.entry(Symbol.of("print"), (Lambda) args -> {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     System.out.println(args.get(0));
                     return null;
                 }),
-                Map.entry(new Symbol("procedure?"), (Lambda) (args ->
+                Map.entry(Symbol.of("procedure?"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return args.get(0) instanceof Procedure;
                 })),
-                Map.entry(new Symbol("round"), (Lambda) (args ->
+                Map.entry(Symbol.of("round"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
-                    return Math.round(value(args.get(0)));
+                    var t = args.get(0);
+                    if (isExact(t)) { return t; }
+                    return integer(Math.round(value(t)));
                 })),
-                Map.entry(new Symbol("symbol?"), (Lambda) (args ->
+                Map.entry(Symbol.of("symbol?"), (Lambda) (args ->
                 {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return args.get(0) instanceof Symbol;
                 })),
-                Map.entry(new Symbol("pi"), Math.PI),
-                Map.entry(new Symbol("nil"), Jispy.Nil),
-                Map.entry(new Symbol("boolean?"), (Lambda) args -> {
+                Map.entry(Symbol.of("string-append"), (Lambda) (args ->
+                {
+                    var res = new StringBuilder();
+                    for (var s : args) res.append((String) s);
+                    return res.toString();
+                })),
+                Map.entry(Symbol.of("string-length"), (Lambda) (args ->
+                {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return ((String) args.get(0)).length();
+                })),
+                Map.entry(Symbol.of("number->string"), (Lambda) (args ->
+                {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    if (!isNumber(args.get(0))) { throw new TypeException(evalToString(args.get(0)) + " is not number"); }
+                    return evalToString(args.get(0));
+                })),
+                Map.entry(Symbol.of("pi"), Math.PI),
+                Map.entry(Symbol.of("nil"), Jispy.Nil),
+                Map.entry(Symbol.of("boolean?"), (Lambda) args -> {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return args.get(0) instanceof Boolean;
                 }),
-                Map.entry(new Symbol("port?"), (Lambda) args -> {
+                Map.entry(Symbol.of("port?"), (Lambda) args -> {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return args.get(0) instanceof File;
                 }),
-                Map.entry(new Symbol("call/cc"), (Lambda) args -> {
+                Map.entry(Symbol.of("call/cc"), (Lambda) args -> {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return callcc((Lambda) args.get(0));
                 }),
-                Map.entry(new Symbol("sqrt"), (Lambda) args -> {
+                Map.entry(Symbol.of("dynamic-wind"), (Lambda) args -> {
+                    if (args.size() != 3) { throw new ArgumentsCountException(); }
+                    return NonLocalExit.dynamicWind((Lambda) args.get(0), (Lambda) args.get(1), (Lambda) args.get(2));
+                }),
+                Map.entry(Symbol.of("with-exception-handler"), (Lambda) args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    return NonLocalExit.withExceptionHandler((Lambda) args.get(0), (Lambda) args.get(1));
+                }),
+                Map.entry(Symbol.of("raise"), (Lambda) args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return NonLocalExit.raise(args.get(0), false);
+                }),
+                Map.entry(Symbol.of("raise-continuable"), (Lambda) args -> {
+                    if (args.size() != 1) { throw new ArgumentsCountException(); }
+                    return NonLocalExit.raise(args.get(0), true);
+                }),
+                Map.entry(Symbol.of("call-with-guard"), (Lambda) args -> {
+                    if (args.size() != 2) { throw new ArgumentsCountException(); }
+                    return NonLocalExit.guard((Lambda) args.get(0), (Lambda) args.get(1));
+                }),
+                Map.entry(Symbol.of("sqrt"), (Lambda) args -> {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     var t = args.get(0);
                     if (t instanceof Integer) {
@@ -310,8 +772,8 @@ class Environment extends HashMap<Object, Object> {
                             return c.sqrt();
                         }
                     }
-                    else if (t instanceof Double) {
-                        double d = (Double) t;
+                    else if (t instanceof Double || t instanceof BigInteger) {
+                        double d = value(t);
                         if (d >= 0) {
                             return Math.sqrt(d);
                         }
@@ -327,12 +789,12 @@ class Environment extends HashMap<Object, Object> {
                     else { throw new SyntaxException(evalToString(t) + " is not number"); }
                 }),
 
-                Map.entry(new Symbol("display"), (Lambda) args -> {
+                Map.entry(Symbol.of("display"), (Lambda) args -> {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     System.out.print(evalToString(args.get(0)));
                     return null;
                 }),
-                Map.entry(new Symbol("port?"), (Lambda) args -> {
+                Map.entry(Symbol.of("port?"), (Lambda) args -> {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     if (args.get(0) instanceof String) {
                         return new File((String) args.get(0)).exists();
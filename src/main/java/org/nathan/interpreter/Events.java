@@ -0,0 +1,128 @@
+package org.nathan.interpreter;
+
+import jdk.jfr.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * flight recorder events of the interpreter phases. while an event type is disabled, begin and end only
+ * check that, so they can stay in the hot paths. the thresholds keep small forms out of recordings
+ */
+final class Events {
+    private static final com.sun.management.ThreadMXBean threads =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean ?
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+    /**
+     * file being loaded or run on this thread
+     */
+    private static final ThreadLocal<String> source = new ThreadLocal<>();
+
+    private Events() {
+    }
+
+    /**
+     * @return the previous source, to be restored with {@link #restoreSource(String)}
+     */
+    static String enterSource(@NotNull String file) {
+        var saved = source.get();
+        source.set(file);
+        return saved;
+    }
+
+    static void restoreSource(String saved) {
+        source.set(saved);
+    }
+
+    private static long allocatedBytes() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @return number of atoms and lists in x
+     */
+    static long size(Object x) {
+        if (!(x instanceof List)) { return 1; }
+        long res = 1;
+        for (var e : (List<?>) x) res += size(e);
+        return res;
+    }
+
+    @Category({"Jispy"})
+    @StackTrace(false)
+    abstract static class Phase extends Event {
+        @Label("Source")
+        String source;
+        @Label("Form Size")
+        @Description("Atoms and lists in the form")
+        long formSize;
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+
+        void start() {
+            if (!isEnabled()) { return; }
+            allocatedBytes = allocatedBytes();
+            begin();
+        }
+
+        /**
+         * @param form source or expanded form the phase worked on
+         */
+        void finish(Object form) {
+            if (!isEnabled()) { return; }
+            end();
+            if (shouldCommit()) { record(size(form)); }
+        }
+
+        void finish(long formSize) {
+            if (!isEnabled()) { return; }
+            end();
+            if (shouldCommit()) { record(formSize); }
+        }
+
+        private void record(long formSize) {
+            allocatedBytes = allocatedBytes() - allocatedBytes;
+            source = Events.source.get();
+            this.formSize = formSize;
+            commit();
+        }
+    }
+
+    @Name("org.nathan.jispy.Parse")
+    @Label("Parse")
+    @Description("Reading one top level form")
+    @Threshold("1 ms")
+    static final class Parse extends Phase {
+    }
+
+    @Name("org.nathan.jispy.Expand")
+    @Label("Expand")
+    @Description("Macro expansion of one top level form")
+    @Threshold("1 ms")
+    static final class Expand extends Phase {
+    }
+
+    @Name("org.nathan.jispy.MacroExpansion")
+    @Label("Macro Expansion")
+    @Description("Call of one macro procedure")
+    @Threshold("1 ms")
+    static final class MacroExpansion extends Phase {
+        @Label("Macro")
+        String macro;
+    }
+
+    @Name("org.nathan.jispy.Eval")
+    @Label("Eval")
+    @Description("Evaluation of one top level form")
+    @Threshold("1 ms")
+    static final class Eval extends Phase {
+    }
+
+    @Name("org.nathan.jispy.Load")
+    @Label("Load")
+    @Description("Loading a library file, the form size is its length in bytes")
+    static final class Load extends Phase {
+    }
+}
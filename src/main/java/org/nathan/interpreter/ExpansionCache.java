@@ -0,0 +1,111 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * directory of expanded top level forms of source files, like .pyc files. an entry is named by the hash of
+ * the interpreter version, the names and definitions of the macros defined when the file was expanded, and the
+ * file content. macros are compared as an image would save them, builtin macros by name.
+ * define-macro forms are kept as (define-macro name expanded-procedure) so loading an entry defines them again.
+ * entries are written to a temporary file and moved in place, so concurrent loaders never see a partial entry
+ */
+final class ExpansionCache {
+    static final String VERSION = "3.0";
+    private static final int MAGIC = 0x4A535043;
+
+    private final File directory;
+
+    ExpansionCache(@NotNull File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param natives builtins by name, as for {@link Image#serialize}
+     * @return null when a macro can not be serialized, so the expansion can not be cached
+     */
+    String key(@NotNull byte[] source, @NotNull PersistentMap macros, @NotNull Environment env,
+               @NotNull Map<Symbol, Lambda> natives) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+        var definitions = new TreeMap<String, Object>();
+        macros.forEach((name, macro) -> definitions.put(name.toString(), macro));
+        try {
+            for (var e : definitions.entrySet()) {
+                digest.update((byte) 0);
+                digest.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+                if (e.getValue() instanceof Procedure) { digest.update(Image.serialize(e.getValue(), env, natives)); }
+            }
+        }
+        catch (IllegalStateException e) {
+            return null;
+        }
+        digest.update((byte) 0);
+        var hash = digest.digest(source);
+        var key = new StringBuilder();
+        for (var b : hash) key.append(String.format("%02x", b));
+        return key.toString();
+    }
+
+    private @NotNull File entry(@NotNull String key) {
+        return new File(directory, key + ".jspc");
+    }
+
+    /**
+     * @return forms of the entry, or null when there is none or it can not be read
+     */
+    List<Object> read(@NotNull String key) {
+        var file = entry(key);
+        if (!file.isFile()) { return null; }
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC) { return null; }
+            var forms = new ArrayList<>(in.getInt());
+            while (in.hasRemaining()) forms.add(Image.readDatum(in));
+            return forms;
+        }
+        catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * leaves the cache unchanged when the forms hold objects other than data, or it can not be written
+     */
+    void write(@NotNull String key, @NotNull List<Object> forms) {
+        File temp = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temp = File.createTempFile(key, ".tmp", directory);
+            try (var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(forms.size());
+                for (var form : forms) Image.writeDatum(out, form);
+            }
+            Files.move(temp.toPath(), entry(key).toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            if (temp != null) { temp.delete(); }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static org.nathan.interpreter.Jispy.evalToString;
+
+/**
+ * activation record of a procedure call, local variables are addressed by (depth, slot)
+ * coordinates resolved in {@link Analyzer}, globals live in {@link #global}.
+ * the global environment is the one of the caller, so a procedure shared between sessions
+ * sees the defines of the session calling it
+ */
+final class Frame {
+    /**
+     * value of an internal define slot before its define has run
+     */
+    static final Object UNASSIGNED = new Object();
+    private static final Object[] NO_SLOTS = new Object[0];
+
+    final Object[] slots;
+    final Frame outer;
+    final Environment global;
+
+    Frame(@NotNull Environment global) {
+        this.slots = NO_SLOTS;
+        this.outer = null;
+        this.global = global;
+    }
+
+    Frame(@NotNull Object[] slots, @NotNull Frame outer, @NotNull Environment global) {
+        this.slots = slots;
+        this.outer = outer;
+        this.global = global;
+    }
+
+    /**
+     * @param values evaluated arguments, reused as the slot array when no internal define needs room
+     * @param global environment of the caller
+     */
+    static @NotNull Frame bind(@NotNull Node.LambdaNode lambda, @NotNull Object[] values, @NotNull Frame outer,
+                               @NotNull Environment global) {
+        if (global.metrics != null) { global.metrics.frames.increment(); }
+        Object[] slots;
+        if (lambda.variadic) {
+            slots = new Object[lambda.frameSize];
+            slots[0] = Pair.fromArray(values);
+            if (lambda.frameSize > 1) { Arrays.fill(slots, 1, slots.length, UNASSIGNED); }
+        }
+        else if (values.length != lambda.parameterCount) {
+            throw new TypeException(String.format("'expected %s, given %s",
+                    evalToString(lambda.parameters),
+                    evalToString(Arrays.asList(values))));
+        }
+        else if (lambda.frameSize == values.length) { slots = values; }
+        else {
+            slots = Arrays.copyOf(values, lambda.frameSize);
+            Arrays.fill(slots, values.length, slots.length, UNASSIGNED);
+        }
+        return new Frame(slots, outer, global);
+    }
+}
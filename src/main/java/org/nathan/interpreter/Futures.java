@@ -0,0 +1,98 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.*;
+
+/**
+ * future, touch, spawn and sleep. thunks run in the global environment of the caller, on the executor set
+ * with {@link Jispy#setExecutor} when there is one, otherwise on a virtual thread each when the JVM has them
+ * or on a pool of daemon threads.
+ * touch rethrows what the thunk threw as it was thrown, so guard and call/cc escapes work across threads
+ */
+final class Futures {
+    private static final Executor fallback = Executors.newCachedThreadPool(r -> {
+        var t = new Thread(r, "jispy-future");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Executor virtual = virtualThreads();
+
+    private Futures() {
+    }
+
+    /**
+     * @return executor starting a virtual thread per task, null before Java 21
+     */
+    private static Executor virtualThreads() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return executor of the environment first, virtual threads only when none was set
+     */
+    private static @NotNull Executor executor(Environment global) {
+        if (global != null && global.executor != null) { return global.executor; }
+        return virtual != null ? virtual : fallback;
+    }
+
+    static @NotNull CompletableFuture<Object> future(@NotNull Lambda thunk) {
+        var global = Environment.current();
+        var res = new CompletableFuture<>();
+        executor(global).execute(() -> {
+            try {
+                res.complete(global == null ? thunk.apply(Jispy.Nil) :
+                        global.enter(() -> thunk instanceof Procedure ?
+                                ((Procedure) thunk).invoke(global, new Object[0]) : thunk.apply(Jispy.Nil)));
+            }
+            catch (Throwable e) {
+                res.completeExceptionally(e);
+            }
+        });
+        return res;
+    }
+
+    /**
+     * runs thunk without waiting for it, its failure is printed
+     */
+    static void spawn(@NotNull Lambda thunk) {
+        future(thunk).whenComplete((value, e) -> {
+            if (e != null) { e.printStackTrace(System.err); }
+        });
+    }
+
+    /**
+     * @return value of x once computed when it is a future, otherwise x
+     */
+    static Object touch(Object x) {
+        if (!(x instanceof CompletableFuture)) { return x; }
+        try {
+            return ((CompletableFuture<?>) x).get();
+        }
+        catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+            else if (cause instanceof Error) { throw (Error) cause; }
+            throw new IllegalStateException(cause);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a future", e);
+        }
+    }
+
+    static void sleep(@NotNull Object milliseconds) {
+        try {
+            Thread.sleep((long) NumericOperators.value(milliseconds));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while sleeping", e);
+        }
+    }
+}
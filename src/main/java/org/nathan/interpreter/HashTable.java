@@ -0,0 +1,235 @@
+package org.nathan.interpreter;
+
+import org.apache.commons.math3.complex.Complex;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.BiConsumer;
+
+/**
+ * hash table of make-hash-table, with open addressing and linear probing. fixnum keys live in their own
+ * int keyed table, so they are compared and hashed unboxed whatever the equivalence. symbols are interned,
+ * so they are compared by identity and hashed by their cached hash. other keys are compared by eq?, eqv? or
+ * equal? as the table was made, and their hashes are kept next to them. deletion shifts the following
+ * entries back instead of leaving tombstones. not safe for concurrent use
+ */
+final class HashTable {
+    enum Equivalence {EQ, EQV, EQUAL}
+
+    private static final int MIN_CAPACITY = 8;
+    /**
+     * stands for a null key or value, a slot holding null is free
+     */
+    private static final Object NULL = new Object();
+
+    final Equivalence equivalence;
+    private int[] ints;
+    private Object[] intValues;
+    private int intCount;
+    private Object[] keys;
+    private Object[] values;
+    private int[] hashes;
+    private int count;
+
+    HashTable(@NotNull Equivalence equivalence) {
+        this.equivalence = equivalence;
+    }
+
+    private static Object mask(Object x) {
+        return x == null ? NULL : x;
+    }
+
+    private static Object unmask(Object x) {
+        return x == NULL ? null : x;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    int size() {
+        return intCount + count;
+    }
+
+    private int hash(@NotNull Object key) {
+        if (key instanceof Symbol || key == NULL) { return key.hashCode(); }
+        switch (equivalence) {
+            case EQ:
+                return System.identityHashCode(key);
+            case EQV:
+                return key instanceof Number || key instanceof Complex ? key.hashCode() :
+                        System.identityHashCode(key);
+            default:
+                return Utils.equalHash(key);
+        }
+    }
+
+    private boolean same(@NotNull Object a, @NotNull Object b) {
+        if (a == b) { return true; }
+        else if (a instanceof Symbol || b instanceof Symbol) { return false; }
+        switch (equivalence) {
+            case EQ:
+                return false;
+            case EQV:
+                return (a instanceof Number || a instanceof Complex) && a.equals(b);
+            default:
+                return Utils.isEqual(a, b);
+        }
+    }
+
+    /**
+     * @return slot holding key, or the free slot ending its probe sequence
+     */
+    private int intSlot(int key) {
+        int mask = ints.length - 1;
+        int i = mix(key) & mask;
+        while (intValues[i] != null && ints[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private int slot(@NotNull Object key, int hash) {
+        int mask = keys.length - 1;
+        int i = mix(hash) & mask;
+        Object k;
+        while ((k = keys[i]) != null && (hashes[i] != hash || !same(k, key))) i = (i + 1) & mask;
+        return i;
+    }
+
+    Object get(Object key, Object notFound) {
+        if (key instanceof Integer) {
+            if (ints == null) { return notFound; }
+            var value = intValues[intSlot((Integer) key)];
+            return value == null ? notFound : unmask(value);
+        }
+        if (keys == null) { return notFound; }
+        key = mask(key);
+        int i = slot(key, hash(key));
+        return keys[i] == null ? notFound : unmask(values[i]);
+    }
+
+    boolean containsKey(Object key) {
+        return get(key, NULL) != NULL;
+    }
+
+    void put(Object key, Object value) {
+        if (key instanceof Integer) {
+            if (ints == null || 2 * (intCount + 1) > ints.length) { resizeInts(); }
+            int i = intSlot((Integer) key);
+            if (intValues[i] == null) {
+                ints[i] = (Integer) key;
+                intCount++;
+            }
+            intValues[i] = mask(value);
+            return;
+        }
+        if (keys == null || 2 * (count + 1) > keys.length) { resize(); }
+        key = mask(key);
+        int hash = hash(key);
+        int i = slot(key, hash);
+        if (keys[i] == null) {
+            keys[i] = key;
+            hashes[i] = hash;
+            count++;
+        }
+        values[i] = mask(value);
+    }
+
+    /**
+     * @return whether key was in the table
+     */
+    boolean remove(Object key) {
+        if (key instanceof Integer) {
+            if (ints == null) { return false; }
+            int i = intSlot((Integer) key);
+            if (intValues[i] == null) { return false; }
+            int mask = ints.length - 1;
+            for (int j = (i + 1) & mask; intValues[j] != null; j = (j + 1) & mask) {
+                if (((j - (mix(ints[j]) & mask)) & mask) >= ((j - i) & mask)) {
+                    ints[i] = ints[j];
+                    intValues[i] = intValues[j];
+                    i = j;
+                }
+            }
+            intValues[i] = null;
+            intCount--;
+            return true;
+        }
+        if (keys == null) { return false; }
+        key = mask(key);
+        int i = slot(key, hash(key));
+        if (keys[i] == null) { return false; }
+        int mask = keys.length - 1;
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            if (((j - (mix(hashes[j]) & mask)) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                hashes[i] = hashes[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+        values[i] = null;
+        count--;
+        return true;
+    }
+
+    private void resizeInts() {
+        var oldKeys = ints;
+        var oldValues = intValues;
+        int capacity = oldKeys == null ? MIN_CAPACITY : 2 * oldKeys.length;
+        ints = new int[capacity];
+        intValues = new Object[capacity];
+        if (oldKeys == null) { return; }
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == null) { continue; }
+            int i = intSlot(oldKeys[j]);
+            ints[i] = oldKeys[j];
+            intValues[i] = oldValues[j];
+        }
+    }
+
+    private void resize() {
+        var oldKeys = keys;
+        var oldValues = values;
+        var oldHashes = hashes;
+        int capacity = oldKeys == null ? MIN_CAPACITY : 2 * oldKeys.length;
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        if (oldKeys == null) { return; }
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) { continue; }
+            int i = mix(oldHashes[j]) & mask;
+            while (keys[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+            hashes[i] = oldHashes[j];
+        }
+    }
+
+    /**
+     * calls action on the entries present when it starts, so action may change the table
+     */
+    void forEach(@NotNull BiConsumer<Object, Object> action) {
+        if (ints != null) {
+            var ints = this.ints.clone();
+            var intValues = this.intValues.clone();
+            for (int i = 0; i < ints.length; i++) {
+                if (intValues[i] != null) { action.accept(ints[i], unmask(intValues[i])); }
+            }
+        }
+        if (keys != null) {
+            var keys = this.keys.clone();
+            var values = this.values.clone();
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) { action.accept(unmask(keys[i]), unmask(values[i])); }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "#<hash-table " + size() + ">";
+    }
+}
@@ -0,0 +1,601 @@
+package org.nathan.interpreter;
+
+import org.apache.commons.math3.complex.Complex;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * binary image of the globals and macros of an interpreter. closures are saved with their analyzed
+ * bodies and captured frames, so restoring does not read, expand or analyze anything. builtins are saved
+ * by name. objects reachable in several ways keep their identity, except the shared tails of lists.
+ * <p>
+ * layout: magic, version, bindings, macros, then the slots of every frame in the order the frames were met.
+ * frame slots come last because they may refer back to closures over the frame
+ */
+final class Image {
+    private static final int MAGIC = 0x4A535059;
+    private static final int VERSION = 4;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INTEGER = 3;
+    private static final byte BIG_INTEGER = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte COMPLEX = 6;
+    private static final byte STRING = 7;
+    private static final byte SYMBOL = 8;
+    private static final byte REFERENCE = 9;
+    private static final byte LIST = 10;
+    private static final byte NATIVE = 11;
+    private static final byte PROCEDURE = 12;
+    private static final byte FRAME = 13;
+    private static final byte ROOT = 14;
+    private static final byte UNASSIGNED = 15;
+    private static final byte VECTOR = 16;
+    private static final byte F64VECTOR = 17;
+    private static final byte S64VECTOR = 18;
+    private static final byte HASH_TABLE = 19;
+    private static final byte CONSTANT = 20;
+    private static final byte LOCAL_REF = 21;
+    private static final byte GLOBAL_REF = 22;
+    private static final byte LOCAL_SET = 23;
+    private static final byte GLOBAL_SET = 24;
+    private static final byte LOCAL_DEFINE = 25;
+    private static final byte GLOBAL_DEFINE = 26;
+    private static final byte LAMBDA = 27;
+    private static final byte IF = 28;
+    private static final byte BEGIN = 29;
+    private static final byte CALL = 30;
+
+    private Image() {
+    }
+
+    /**
+     * @param natives builtins by name, saved as references to the builtins of the restoring interpreter
+     */
+    static void save(@NotNull Environment env, @NotNull PersistentMap macros, @NotNull Map<Symbol, Lambda> natives,
+                     @NotNull File file) {
+        try (var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            new Writer(env, natives, out).write(macros);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param natives builtins by name, written as their names
+     * @return bytes of value and everything it refers to, equal for equal definitions
+     * @throws IllegalStateException when value refers to objects an image can not hold
+     */
+    static @NotNull byte[] serialize(Object value, @NotNull Environment env, @NotNull Map<Symbol, Lambda> natives) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            new Writer(env, natives, out).writeValue(value);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * defines the saved globals in env
+     *
+     * @param natives builtins of the restoring interpreter by name
+     * @return macros with the saved ones added
+     */
+    static @NotNull PersistentMap restore(@NotNull File file, @NotNull Environment env, @NotNull PersistentMap macros,
+                                          @NotNull Map<Symbol, Lambda> natives) {
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Reader(env, natives, buffer).read(macros);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return whether x is a number, string, symbol, boolean or null, which were written
+     */
+    private static boolean writeAtom(@NotNull DataOutputStream out, Object x) throws IOException {
+        if (x == null) { out.writeByte(NULL); }
+        else if (x instanceof Boolean) { out.writeByte((Boolean) x ? TRUE : FALSE); }
+        else if (x instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) x);
+        }
+        else if (x instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            var bytes = ((BigInteger) x).toByteArray();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else if (x instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) x);
+        }
+        else if (x instanceof Complex) {
+            out.writeByte(COMPLEX);
+            out.writeDouble(((Complex) x).getReal());
+            out.writeDouble(((Complex) x).getImaginary());
+        }
+        else if (x instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) x);
+        }
+        else if (x instanceof Symbol) {
+            out.writeByte(SYMBOL);
+            writeString(out, ((Symbol) x).str);
+        }
+        else { return false; }
+        return true;
+    }
+
+    private static Object readAtom(byte tag, @NotNull ByteBuffer in) {
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            case INTEGER:
+                return in.getInt();
+            case BIG_INTEGER: {
+                var bytes = new byte[in.getInt()];
+                in.get(bytes);
+                return new BigInteger(bytes);
+            }
+            case DOUBLE:
+                return in.getDouble();
+            case COMPLEX:
+                return new Complex(in.getDouble(), in.getDouble());
+            case STRING:
+                return readString(in);
+            case SYMBOL:
+                return Symbol.of(readString(in));
+            default:
+                throw new IllegalStateException("bad image tag " + tag);
+        }
+    }
+
+    /**
+     * @return whether x is an f64vector or s64vector, which was written
+     */
+    private static boolean writeNumbers(@NotNull DataOutputStream out, Object x) throws IOException {
+        if (x instanceof double[]) {
+            out.writeByte(F64VECTOR);
+            out.writeInt(((double[]) x).length);
+            for (var d : (double[]) x) out.writeDouble(d);
+        }
+        else if (x instanceof long[]) {
+            out.writeByte(S64VECTOR);
+            out.writeInt(((long[]) x).length);
+            for (var l : (long[]) x) out.writeLong(l);
+        }
+        else { return false; }
+        return true;
+    }
+
+    private static @NotNull Object readNumbers(byte tag, @NotNull ByteBuffer in) {
+        if (tag == F64VECTOR) {
+            var res = new double[in.getInt()];
+            in.asDoubleBuffer().get(res);
+            in.position(in.position() + 8 * res.length);
+            return res;
+        }
+        var res = new long[in.getInt()];
+        in.asLongBuffer().get(res);
+        in.position(in.position() + 8 * res.length);
+        return res;
+    }
+
+    private static void writeString(@NotNull DataOutputStream out, @NotNull String s) throws IOException {
+        var bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @NotNull String readString(@NotNull ByteBuffer in) {
+        var bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * writes data made of atoms, lists and vectors, as produced by read and expand. they are copied
+     *
+     * @throws IllegalArgumentException when x holds anything else
+     */
+    static void writeDatum(@NotNull DataOutputStream out, Object x) throws IOException {
+        if (writeAtom(out, x)) { return; }
+        else if (x instanceof List) {
+            var l = (List<?>) x;
+            out.writeByte(LIST);
+            out.writeInt(l.size());
+            for (var e : l) writeDatum(out, e);
+        }
+        else if (x instanceof Object[]) {
+            out.writeByte(VECTOR);
+            out.writeInt(((Object[]) x).length);
+            for (var e : (Object[]) x) writeDatum(out, e);
+        }
+        else if (writeNumbers(out, x)) { return; }
+        else { throw new IllegalArgumentException("can not save " + Jispy.evalToString(x)); }
+    }
+
+    static Object readDatum(@NotNull ByteBuffer in) {
+        byte tag = in.get();
+        if (tag == F64VECTOR || tag == S64VECTOR) { return readNumbers(tag, in); }
+        else if (tag != LIST && tag != VECTOR) { return readAtom(tag, in); }
+        var values = new Object[in.getInt()];
+        for (int i = 0; i < values.length; i++) values[i] = readDatum(in);
+        return tag == VECTOR ? values : Pair.fromArray(values);
+    }
+
+    private static final class Writer {
+        private final Environment env;
+        private final Map<Object, Symbol> natives = new IdentityHashMap<>();
+        private final DataOutputStream out;
+        private final Map<Object, Integer> ids = new IdentityHashMap<>();
+        private final Deque<Frame> frames = new ArrayDeque<>();
+
+        Writer(@NotNull Environment env, @NotNull Map<Symbol, Lambda> evaluators, @NotNull DataOutputStream out) {
+            this.env = env;
+            this.out = out;
+            env.builtins().forEach((name, value) -> {
+                if (value instanceof Lambda) { natives.put(value, (Symbol) name); }
+            });
+            evaluators.forEach((name, value) -> natives.put(value, name));
+        }
+
+        void write(@NotNull PersistentMap macros) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeMap(env.bindings(), false);
+            writeMap(macros, true);
+            while (!frames.isEmpty()) {
+                for (var value : frames.removeFirst().slots) writeObject(value);
+            }
+        }
+
+        void writeValue(Object value) throws IOException {
+            writeObject(value);
+            while (!frames.isEmpty()) {
+                for (var slot : frames.removeFirst().slots) writeObject(slot);
+            }
+        }
+
+        /**
+         * entries holding builtins under their own name are left out, they exist in every interpreter
+         *
+         * @param proceduresOnly whether to keep only the entries defined in scheme
+         */
+        private void writeMap(@NotNull PersistentMap map, boolean proceduresOnly) throws IOException {
+            var entries = new ArrayList<Map.Entry<Object, Object>>();
+            map.forEach((k, v) -> {
+                if (proceduresOnly ? v instanceof Procedure : natives.get(v) != k) { entries.add(Map.entry(k, v)); }
+            });
+            out.writeInt(entries.size());
+            for (var e : entries) {
+                writeString(((Symbol) e.getKey()).str);
+                writeObject(e.getValue());
+            }
+        }
+
+        private void writeString(@NotNull String s) throws IOException {
+            Image.writeString(out, s);
+        }
+
+        /**
+         * @return whether x was written before, in which case a reference to it was written
+         */
+        private boolean writeReference(@NotNull Object x) throws IOException {
+            var id = ids.get(x);
+            if (id != null) {
+                out.writeByte(REFERENCE);
+                out.writeInt(id);
+                return true;
+            }
+            ids.put(x, ids.size());
+            return false;
+        }
+
+        private void writeObject(Object x) throws IOException {
+            if (writeAtom(out, x)) { return; }
+            else if (x == Frame.UNASSIGNED) { out.writeByte(UNASSIGNED); }
+            else if (x instanceof List) {
+                if (writeReference(x)) { return; }
+                var l = (List<?>) x;
+                out.writeByte(LIST);
+                out.writeInt(l.size());
+                for (var e : l) writeObject(e);
+            }
+            else if (x instanceof Object[]) {
+                if (writeReference(x)) { return; }
+                out.writeByte(VECTOR);
+                out.writeInt(((Object[]) x).length);
+                for (var e : (Object[]) x) writeObject(e);
+            }
+            else if (x instanceof double[] || x instanceof long[]) {
+                if (writeReference(x)) { return; }
+                writeNumbers(out, x);
+            }
+            else if (x instanceof HashTable) {
+                if (writeReference(x)) { return; }
+                var table = (HashTable) x;
+                var entries = new ArrayList<>();
+                table.forEach((key, value) -> {
+                    entries.add(key);
+                    entries.add(value);
+                });
+                out.writeByte(HASH_TABLE);
+                out.writeByte(table.equivalence.ordinal());
+                out.writeInt(entries.size() / 2);
+                for (var e : entries) writeObject(e);
+            }
+            else if (natives.containsKey(x)) {
+                out.writeByte(NATIVE);
+                writeString(natives.get(x).str);
+            }
+            else if (x instanceof Procedure) {
+                if (writeReference(x)) { return; }
+                var p = (Procedure) x;
+                out.writeByte(PROCEDURE);
+                writeNode(p.lambda());
+                writeFrame(p.environment());
+            }
+            else { throw new IllegalStateException("can not save " + Jispy.evalToString(x)); }
+        }
+
+        /**
+         * the root frame of any environment, such as the origin of a fork, is restored as the root
+         */
+        private void writeFrame(@NotNull Frame f) throws IOException {
+            if (f.outer == null) {
+                out.writeByte(ROOT);
+                return;
+            }
+            if (writeReference(f)) { return; }
+            out.writeByte(FRAME);
+            writeFrame(f.outer);
+            out.writeInt(f.slots.length);
+            frames.addLast(f);
+        }
+
+        private void writeNodes(@NotNull Node[] nodes) throws IOException {
+            out.writeInt(nodes.length);
+            for (var n : nodes) writeNode(n);
+        }
+
+        private void writeNode(@NotNull Node n) throws IOException {
+            if (n instanceof Node.Constant) {
+                out.writeByte(CONSTANT);
+                writeObject(((Node.Constant) n).value);
+            }
+            else if (n instanceof Node.LocalRef) {
+                var r = (Node.LocalRef) n;
+                out.writeByte(LOCAL_REF);
+                writeString(r.name.str);
+                out.writeInt(r.depth);
+                out.writeInt(r.slot);
+                out.writeBoolean(r.checked);
+            }
+            else if (n instanceof Node.GlobalRef) {
+                out.writeByte(GLOBAL_REF);
+                writeString(((Node.GlobalRef) n).name.str);
+            }
+            else if (n instanceof Node.LocalSet) {
+                var s = (Node.LocalSet) n;
+                out.writeByte(LOCAL_SET);
+                out.writeInt(s.depth);
+                out.writeInt(s.slot);
+                writeNode(s.value);
+            }
+            else if (n instanceof Node.GlobalSet) {
+                out.writeByte(GLOBAL_SET);
+                writeString(((Node.GlobalSet) n).name.str);
+                writeNode(((Node.GlobalSet) n).value);
+            }
+            else if (n instanceof Node.LocalDefine) {
+                out.writeByte(LOCAL_DEFINE);
+                out.writeInt(((Node.LocalDefine) n).slot);
+                writeNode(((Node.LocalDefine) n).value);
+            }
+            else if (n instanceof Node.GlobalDefine) {
+                out.writeByte(GLOBAL_DEFINE);
+                writeString(((Node.GlobalDefine) n).name.str);
+                writeNode(((Node.GlobalDefine) n).value);
+            }
+            else if (n instanceof Node.LambdaNode) {
+                if (writeReference(n)) { return; }
+                var l = (Node.LambdaNode) n;
+                out.writeByte(LAMBDA);
+                writeObject(l.parameters);
+                out.writeInt(l.parameterCount);
+                out.writeBoolean(l.variadic);
+                out.writeInt(l.frameSize);
+                writeNode(l.body);
+                writeObject(l.name);
+            }
+            else if (n instanceof Node.If) {
+                var i = (Node.If) n;
+                out.writeByte(IF);
+                writeNode(i.test);
+                writeNode(i.consequence);
+                writeNode(i.alternative);
+            }
+            else if (n instanceof Node.Begin) {
+                out.writeByte(BEGIN);
+                writeNodes(((Node.Begin) n).body);
+            }
+            else if (n instanceof Node.Call) {
+                out.writeByte(CALL);
+                writeNode(((Node.Call) n).operator);
+                writeNodes(((Node.Call) n).operands);
+            }
+            else { throw new IllegalStateException(n.getClass().getName()); }
+        }
+    }
+
+    private static final class Reader {
+        private final Environment env;
+        private final Map<Symbol, Lambda> evaluators;
+        private final ByteBuffer in;
+        private final List<Object> objects = new ArrayList<>();
+        private final Deque<Frame> frames = new ArrayDeque<>();
+
+        Reader(@NotNull Environment env, @NotNull Map<Symbol, Lambda> evaluators, @NotNull ByteBuffer in) {
+            this.env = env;
+            this.evaluators = evaluators;
+            this.in = in;
+        }
+
+        @NotNull PersistentMap read(@NotNull PersistentMap macros) {
+            if (in.remaining() < 8 || in.getInt() != MAGIC) { throw new IllegalStateException("not an image"); }
+            int version = in.getInt();
+            if (version != VERSION) { throw new IllegalStateException("unsupported image version " + version); }
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) env.put(readSymbol(), readObject());
+            count = in.getInt();
+            for (int i = 0; i < count; i++) macros = macros.put(readSymbol(), readObject());
+            while (!frames.isEmpty()) {
+                var slots = frames.removeFirst().slots;
+                for (int i = 0; i < slots.length; i++) slots[i] = readObject();
+            }
+            return macros;
+        }
+
+        private @NotNull String readString() {
+            return Image.readString(in);
+        }
+
+        private @NotNull Symbol readSymbol() {
+            return Symbol.of(readString());
+        }
+
+        private <T> T register(T x) {
+            objects.add(x);
+            return x;
+        }
+
+        private Object readObject() {
+            byte tag = in.get();
+            switch (tag) {
+                case UNASSIGNED:
+                    return Frame.UNASSIGNED;
+                case REFERENCE:
+                    return objects.get(in.getInt());
+                case LIST: {
+                    int id = objects.size();
+                    objects.add(null);
+                    var values = new Object[in.getInt()];
+                    for (int i = 0; i < values.length; i++) values[i] = readObject();
+                    var l = Pair.fromArray(values);
+                    objects.set(id, l);
+                    return l;
+                }
+                case VECTOR: {
+                    var v = register(new Object[in.getInt()]);
+                    for (int i = 0; i < v.length; i++) v[i] = readObject();
+                    return v;
+                }
+                case F64VECTOR:
+                case S64VECTOR:
+                    return register(readNumbers(tag, in));
+                case HASH_TABLE: {
+                    var table = register(new HashTable(HashTable.Equivalence.values()[in.get()]));
+                    int count = in.getInt();
+                    for (int i = 0; i < count; i++) table.put(readObject(), readObject());
+                    return table;
+                }
+                case NATIVE: {
+                    var name = readSymbol();
+                    Object value = evaluators.get(name);
+                    if (value == null) { value = env.builtin(name); }
+                    if (value == null) { throw new IllegalStateException("unknown builtin " + name); }
+                    return value;
+                }
+                case PROCEDURE: {
+                    int id = objects.size();
+                    objects.add(null);
+                    var lambda = (Node.LambdaNode) readNode();
+                    var p = Procedure.newProcedure(lambda, readFrame());
+                    objects.set(id, p);
+                    return p;
+                }
+                default:
+                    return readAtom(tag, in);
+            }
+        }
+
+        private @NotNull Frame readFrame() {
+            byte tag = in.get();
+            if (tag == ROOT) { return env.root; }
+            else if (tag == REFERENCE) { return (Frame) objects.get(in.getInt()); }
+            else if (tag != FRAME) { throw new IllegalStateException("bad image frame tag " + tag); }
+            int id = objects.size();
+            objects.add(null);
+            var outer = readFrame();
+            var f = new Frame(new Object[in.getInt()], outer, env);
+            objects.set(id, f);
+            frames.addLast(f);
+            return f;
+        }
+
+        private @NotNull Node[] readNodes() {
+            var nodes = new Node[in.getInt()];
+            for (int i = 0; i < nodes.length; i++) nodes[i] = readNode();
+            return nodes;
+        }
+
+        private @NotNull Node readNode() {
+            byte tag = in.get();
+            switch (tag) {
+                case CONSTANT:
+                    return new Node.Constant(readObject());
+                case LOCAL_REF:
+                    return new Node.LocalRef(readSymbol(), in.getInt(), in.getInt(), in.get() != 0);
+                case GLOBAL_REF:
+                    return new Node.GlobalRef(readSymbol());
+                case LOCAL_SET:
+                    return new Node.LocalSet(in.getInt(), in.getInt(), readNode());
+                case GLOBAL_SET:
+                    return new Node.GlobalSet(readSymbol(), readNode());
+                case LOCAL_DEFINE:
+                    return new Node.LocalDefine(in.getInt(), readNode());
+                case GLOBAL_DEFINE:
+                    return new Node.GlobalDefine(readSymbol(), readNode());
+                case REFERENCE:
+                    return (Node) objects.get(in.getInt());
+                case LAMBDA: {
+                    int id = objects.size();
+                    objects.add(null);
+                    var parameters = readObject();
+                    var lambda = new Node.LambdaNode(parameters, in.getInt(), in.get() != 0, in.getInt(), readNode());
+                    lambda.name = (String) readObject();
+                    objects.set(id, lambda);
+                    return lambda;
+                }
+                case IF:
+                    return new Node.If(readNode(), readNode(), readNode());
+                case BEGIN:
+                    return new Node.Begin(readNodes());
+                case CALL:
+                    return new Node.Call(readNode(), readNodes());
+                default:
+                    throw new IllegalStateException("bad image node tag " + tag);
+            }
+        }
+    }
+}
@@ -3,31 +3,33 @@ package org.nathan.interpreter;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.regex.Pattern;
 
 import static org.nathan.interpreter.Symbol.*;
 
+/**
+ * tokenizer reading its source in fixed size chunks, so memory use does not depend on
+ * line length. strings and comments may span chunk boundaries, strings may span lines
+ */
 class InputPort implements Closeable {
-    final BufferedReader file;
-    String line = "";
-    final Queue<String> queue = new LinkedList<>();
-    static final String tokenizer = "\\s*(,@|[('`,)]|\"(?:[\\\\].|[^\\\\\"])*\"|;.*|[^\\s('\"`,;)]*)";
-    static final Pattern pattern = Pattern.compile(tokenizer);
+    private static final int BUFFER_SIZE = 8192;
 
+    final Reader file;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private final StringBuilder pending = new StringBuilder();
 
     InputPort(@NotNull InputStream in) {
-        file = new BufferedReader(new InputStreamReader(in));
+        file = new InputStreamReader(in);
     }
 
     InputPort(@NotNull String in) {
-        file = new BufferedReader(new StringReader(in));
+        file = new StringReader(in);
     }
 
     InputPort(@NotNull File file) {
         try {
-            this.file = new BufferedReader(new FileReader(file));
+            this.file = new FileReader(file);
         }
         catch (FileNotFoundException e) {
             throw new RuntimeException(e);
@@ -35,41 +37,134 @@ class InputPort implements Closeable {
     }
 
     /**
-     * @return string or Symbol
+     * @return string or Symbol, vector literals open with "#(", "#f64(" or "#s64("
      */
     Object nextToken() {
-        while (true) {
-            if (!queue.isEmpty()) {
-                return queue.poll();
-            }
-            else if (line.equals("")) {
-                try {
-                    line = file.readLine();
+        int c = skipBlank();
+        if (c < 0) { return eof; }
+        position++;
+        switch (c) {
+            case '(':
+                return "(";
+            case ')':
+                return ")";
+            case '\'':
+                return "'";
+            case '`':
+                return "`";
+            case ',':
+                if (peek() == '@') {
+                    position++;
+                    return ",@";
                 }
-                catch (IOException e) {
-                    e.printStackTrace(System.err);
-                    throw new RuntimeException(e);
+                return ",";
+            case '"':
+                return readString();
+            case '#': {
+                position--;
+                var atom = readAtom();
+                if ((atom.equals("#") || atom.equals("#f64") || atom.equals("#s64")) && peek() == '(') {
+                    position++;
+                    return atom + "(";
                 }
+                return atom;
             }
+            default:
+                position--;
+                return readAtom();
+        }
+    }
 
-            if (line == null) {
-                return eof;
+    /**
+     * skips whitespace and comments
+     *
+     * @return next significant char, or -1 at end of input
+     */
+    private int skipBlank() {
+        while (true) {
+            int c = peek();
+            if (c < 0) { return c; }
+            else if (c == ';') {
+                while (c >= 0 && c != '\n' && c != '\r') {
+                    position++;
+                    c = peek();
+                }
             }
-            else if (line.equals("")) { continue; }
+            else if (Character.isWhitespace(c)) { position++; }
+            else { return c; }
+        }
+    }
 
-            var matcher = pattern.matcher(line);
-            int idx = 0;
-            while (matcher.find(idx)) {
-                var s = matcher.start(1);
-                var e = matcher.end(1);
-                if (s == e) {break;}
-                var token = line.substring(s, e);
-                idx = e;
-                if (!token.startsWith(";")) {
-                    queue.add(token);
-                }
+    private @NotNull String readAtom() {
+        pending.setLength(0);
+        while (true) {
+            int start = position;
+            while (position < limit && !isDelimiter(buffer[position])) position++;
+            if (position < limit) {
+                if (pending.length() == 0) { return new String(buffer, start, position - start); }
+                pending.append(buffer, start, position - start);
+                return pending.toString();
             }
-            line = "";
+            pending.append(buffer, start, position - start);
+            if (peek() < 0) { return pending.toString(); }
+        }
+    }
+
+    /**
+     * @return string token including its quotes, escapes are kept as written
+     */
+    private @NotNull String readString() {
+        pending.setLength(0);
+        pending.append('"');
+        while (true) {
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') position++;
+            pending.append(buffer, start, position - start);
+            int c = peek();
+            if (c < 0) { throw new SyntaxException("unexpected EOF in string"); }
+            else if (c != '"' && c != '\\') { continue; }
+            position++;
+            pending.append((char) c);
+            if (c == '"') { return pending.toString(); }
+            int escaped = peek();
+            if (escaped < 0) { throw new SyntaxException("unexpected EOF in string"); }
+            position++;
+            pending.append((char) escaped);
+        }
+    }
+
+    private static boolean isDelimiter(char c) {
+        switch (c) {
+            case '(':
+            case ')':
+            case '\'':
+            case '"':
+            case '`':
+            case ',':
+            case ';':
+                return true;
+            default:
+                return Character.isWhitespace(c);
+        }
+    }
+
+    /**
+     * @return char at position without consuming it, or -1 at end of input
+     */
+    private int peek() {
+        if (position < limit) { return buffer[position]; }
+        try {
+            int n;
+            do {
+                n = file.read(buffer, 0, BUFFER_SIZE);
+            } while (n == 0);
+            position = 0;
+            limit = Math.max(n, 0);
+            return n < 0 ? -1 : buffer[0];
+        }
+        catch (IOException e) {
+            e.printStackTrace(System.err);
+            throw new RuntimeException(e);
         }
     }
 
@@ -0,0 +1,139 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * runtime statistics of one global environment. counters are striped, so threads of different
+ * sessions do not contend on them
+ */
+final class InterpreterMetrics implements InterpreterMetricsMBean {
+    private static final int BUCKETS = 40;
+
+    final LongAdder forms = new LongAdder();
+    final LongAdder calls = new LongAdder();
+    final LongAdder frames = new LongAdder();
+    final LongAdder tailCalls = new LongAdder();
+    final LongAdder escapes = new LongAdder();
+    private final LongAdder typeExceptions = new LongAdder();
+    private final LongAdder lookUpExceptions = new LongAdder();
+    private final LongAdder syntaxExceptions = new LongAdder();
+    private final LongAdder[] latencies = new LongAdder[BUCKETS];
+    private final IntSupplier globals;
+    private final IntSupplier macros;
+
+    InterpreterMetrics(@NotNull IntSupplier globals, @NotNull IntSupplier macros) {
+        this.globals = globals;
+        this.macros = macros;
+        for (int i = 0; i < BUCKETS; i++) latencies[i] = new LongAdder();
+    }
+
+    /**
+     * call/cc escape taken in the environment of the expression evaluated on this thread
+     */
+    static void escaped() {
+        var global = Environment.current();
+        if (global != null && global.metrics != null) { global.metrics.escapes.increment(); }
+    }
+
+    void failed(@NotNull RuntimeException e) {
+        if (e instanceof TypeException) { typeExceptions.increment(); }
+        else if (e instanceof LookUpException) { lookUpExceptions.increment(); }
+        else if (e instanceof SyntaxException) { syntaxExceptions.increment(); }
+    }
+
+    void evaluated(long nanos) {
+        long micros = nanos / 1000;
+        latencies[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+    }
+
+    @Override
+    public long getFormsEvaluated() {
+        return forms.sum();
+    }
+
+    @Override
+    public long getProcedureCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getFramesAllocated() {
+        return frames.sum();
+    }
+
+    @Override
+    public long getTailCalls() {
+        return tailCalls.sum();
+    }
+
+    @Override
+    public long getContinuationEscapes() {
+        return escapes.sum();
+    }
+
+    @Override
+    public long getTypeExceptions() {
+        return typeExceptions.sum();
+    }
+
+    @Override
+    public long getLookUpExceptions() {
+        return lookUpExceptions.sum();
+    }
+
+    @Override
+    public long getSyntaxExceptions() {
+        return syntaxExceptions.sum();
+    }
+
+    @Override
+    public int getGlobalBindings() {
+        return globals.getAsInt();
+    }
+
+    @Override
+    public int getMacros() {
+        return macros.getAsInt();
+    }
+
+    @Override
+    public long getEvalScriptsCount() {
+        long res = 0;
+        for (var l : latencies) res += l.sum();
+        return res;
+    }
+
+    @Override
+    public long[] getEvalScriptsLatencyHistogram() {
+        var res = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) res[i] = latencies[i].sum();
+        return res;
+    }
+
+    @Override
+    public long getEvalScriptsP50Micros() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long getEvalScriptsP99Micros() {
+        return percentile(0.99);
+    }
+
+    private long percentile(double p) {
+        var histogram = getEvalScriptsLatencyHistogram();
+        long total = 0;
+        for (var n : histogram) total += n;
+        if (total == 0) { return 0; }
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= rank) { return 1L << i; }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+}
@@ -0,0 +1,41 @@
+package org.nathan.interpreter;
+
+/**
+ * counters of one interpreter, see {@link Jispy#registerMetrics()}
+ */
+public interface InterpreterMetricsMBean {
+    long getFormsEvaluated();
+
+    long getProcedureCalls();
+
+    long getFramesAllocated();
+
+    long getTailCalls();
+
+    long getContinuationEscapes();
+
+    long getTypeExceptions();
+
+    long getLookUpExceptions();
+
+    long getSyntaxExceptions();
+
+    int getGlobalBindings();
+
+    int getMacros();
+
+    long getEvalScriptsCount();
+
+    /**
+     * @return number of evalScripts calls per latency bucket, bucket i holds latencies below 2^i microseconds
+     * and at least 2^(i - 1)
+     */
+    long[] getEvalScriptsLatencyHistogram();
+
+    /**
+     * @return upper bound of the bucket holding the median latency
+     */
+    long getEvalScriptsP50Micros();
+
+    long getEvalScriptsP99Micros();
+}
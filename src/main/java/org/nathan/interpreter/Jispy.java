@@ -4,10 +4,17 @@ import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.complex.ComplexFormat;
 import org.apache.commons.text.StringEscapeUtils;
 import org.jetbrains.annotations.NotNull;
-import org.nathan.interpreter.magic.MagicUtils;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.nathan.interpreter.Symbol.*;
@@ -16,11 +23,116 @@ import static org.nathan.interpreter.Utils.*;
 
 public final class Jispy {
     static final List<Object> Nil = Collections.emptyList();
-    private final Environment GlobalEnv = Environment.NewStandardEnv();
-    private final Map<Symbol, Lambda> macro_table = new HashMap<>(Map.of(_let, this::let));
+    /**
+     * interpreter exceptions record Java stack traces only when set
+     */
+    static volatile boolean debug = Boolean.getBoolean("jispy.debug");
+    private final Environment GlobalEnv;
+    /**
+     * symbol to macro procedure
+     */
+    private PersistentMap macro_table;
+    /**
+     * builtins bound to this interpreter, by name
+     */
+    private final Map<Symbol, Lambda> evaluators = new HashMap<>();
+    private static volatile ExpansionCache expansionCache =
+            System.getProperty("jispy.cache") == null ? null : new ExpansionCache(new File(System.getProperty("jispy.cache")));
+    /**
+     * top level forms expanded while loading a file into the expansion cache, or null
+     */
+    private List<Object> expanded;
+    /**
+     * expanded forms of programs given to evalScripts, or null
+     */
+    private ParseCache parseCache;
+    private static final AtomicInteger interpreters = new AtomicInteger();
+    private ObjectName metricsName;
+
+    public Jispy() {
+        GlobalEnv = Environment.NewStandardEnv();
+        macro_table = PersistentMap.EMPTY.put(_let, (Lambda) this::let).put(_guard, (Lambda) Jispy::guard);
+        defineEvaluators();
+    }
+
+    private Jispy(@NotNull Environment origin, @NotNull PersistentMap bindings, @NotNull PersistentMap macros) {
+        GlobalEnv = new Environment(origin, bindings);
+        macro_table = macros.put(_let, (Lambda) this::let);
+        defineEvaluators();
+    }
+
+    /**
+     * globals and macros of an interpreter at one point in time
+     */
+    public static final class Snapshot {
+        private final Environment origin;
+        private final PersistentMap bindings;
+        private final PersistentMap macros;
+
+        private Snapshot(@NotNull Environment origin, @NotNull PersistentMap bindings, @NotNull PersistentMap macros) {
+            this.origin = origin;
+            this.bindings = bindings;
+            this.macros = macros;
+        }
+
+        /**
+         * @return interpreter starting from this snapshot, in O(1)
+         */
+        public Jispy fork() {
+            return new Jispy(origin, bindings, macros);
+        }
+    }
+
+    /**
+     * globals are copied on write, closures and the data they hold are shared with the forks
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(GlobalEnv, GlobalEnv.bindings(), macro_table);
+    }
+
+    public Jispy fork() {
+        return snapshot().fork();
+    }
+
+    /**
+     * @return fork for use by one thread at a time. the global environment of this interpreter is frozen,
+     * so sessions can be created on any thread and it can not define anything any more
+     */
+    public Jispy newSession() {
+        GlobalEnv.frozen = true;
+        return fork();
+    }
+
+    /**
+     * writes the globals and macros defined in scheme to file, see {@link #loadImage(File)}
+     *
+     * @throws IllegalStateException when a global holds a java object other than a builtin
+     */
+    public void saveImage(@NotNull File file) {
+        Image.save(GlobalEnv, macro_table, evaluators, file);
+    }
+
+    /**
+     * @return new interpreter with the globals and macros of an image, without reading or analyzing any source.
+     * restored procedures start interpreted
+     */
+    public static Jispy loadImage(@NotNull File file) {
+        var interpreter = new Jispy();
+        interpreter.macro_table = Image.restore(file, interpreter.GlobalEnv, interpreter.macro_table,
+                interpreter.evaluators);
+        return interpreter;
+    }
+
+    private void defineEvaluator(@NotNull Symbol name, @NotNull Lambda evaluator) {
+        evaluators.put(name, evaluator);
+        GlobalEnv.put(name, evaluator);
+    }
 
-    {
-        GlobalEnv.put(new Symbol("and"), (Lambda) args -> {
+    /**
+     * builtins evaluating expressions in the global environment of this interpreter
+     */
+    private void defineEvaluators() {
+        defineEvaluator(Symbol.of("and"), args -> {
             if (args.size() < 1) { return true; }
             else if (args.size() == 1) {
                 return args.get(0);
@@ -29,7 +141,7 @@ public final class Jispy {
                 var t = eval(expand(args.get(0)), GlobalEnv);
                 if (isTrue(t)) {
                     List<Object> newExp = new ArrayList<>(args.size());
-                    newExp.add(new Symbol("and"));
+                    newExp.add(Symbol.of("and"));
                     newExp.addAll(args.subList(1, args.size()));
                     return eval(expand(newExp), GlobalEnv);
                 }
@@ -38,17 +150,82 @@ public final class Jispy {
                 }
             }
         });
-        GlobalEnv.put(new Symbol("eval"), (Lambda) args -> {
+        defineEvaluator(Symbol.of("eval"), args -> {
                     if (args.size() != 1) { throw new ArgumentsCountException(); }
                     return eval(expand(args.get(0)), GlobalEnv);
                 });
-        GlobalEnv.put(new Symbol("load"), (Lambda) args -> {
+        defineEvaluator(Symbol.of("load"), args -> {
             if (args.size() != 1) { throw new ArgumentsCountException(); }
             loadLib(args.get(0).toString(), this);
             return null;
         });
     }
 
+    public static void setDebug(boolean debug) {
+        Jispy.debug = debug;
+    }
+
+    /**
+     * @param compiling whether hot lambdas are promoted to JVM bytecode
+     */
+    public void setCompiling(boolean compiling) {
+        GlobalEnv.compiling = compiling;
+    }
+
+    /**
+     * @param threshold interpreted invocations plus loop back edges after which a lambda is compiled
+     */
+    public void setTierThreshold(int threshold) {
+        GlobalEnv.tierThreshold = threshold;
+    }
+
+    public int getTierThreshold() {
+        return GlobalEnv.tierThreshold;
+    }
+
+    /**
+     * @param stackless whether evaluation keeps its continuation on the heap, so recursion depth is not
+     *                  limited by the thread stack and call/cc continuations are re-entrant
+     */
+    public void setStackless(boolean stackless) {
+        GlobalEnv.stackless = stackless;
+    }
+
+    /**
+     * the previous pool is not shut down, forks made before may still use it. its workers end once idle
+     *
+     * @param parallelism number of worker threads of pmap, pfor-each and preduce, 0 for the common pool
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 0) { throw new IllegalArgumentException("negative parallelism " + parallelism); }
+        GlobalEnv.pool = parallelism == 0 ? null : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * @param threshold most list elements one task of pmap, pfor-each and preduce processes
+     */
+    public void setSplitThreshold(int threshold) {
+        if (threshold < 1) { throw new IllegalArgumentException("split threshold below 1: " + threshold); }
+        GlobalEnv.splitThreshold = threshold;
+    }
+
+    /**
+     * @param executor runs the thunks of future and spawn, null for a virtual thread each when the JVM
+     *                 supports them or a shared pool of daemon threads
+     */
+    public void setExecutor(Executor executor) {
+        GlobalEnv.executor = executor;
+    }
+
+    /**
+     * @param procedure value of a procedure, as returned by {@link #evalScripts(String)}
+     */
+    public static @NotNull Tier tierOf(Object procedure) {
+        if (procedure instanceof Procedure) { return ((Procedure) procedure).tier(); }
+        else if (procedure instanceof Lambda) { return Tier.BUILTIN; }
+        else { throw new TypeException(evalToString(procedure) + " is not a procedure"); }
+    }
+
     @SuppressWarnings({"InfiniteLoopStatement"})
     public void repl() {
         String prompt = "Jis.py>";
@@ -59,7 +236,7 @@ public final class Jispy {
                 System.out.print(prompt);
                 var x = parse(inPort);
                 if (x == null) { continue; }
-                else if (x.equals(eof)) { continue; }
+                else if (x == eof) { continue; }
                 evalAndPrint(x);
             }
             catch (Exception e) {
@@ -69,12 +246,13 @@ public final class Jispy {
     }
 
     public void runFile(@NotNull File file) {
+        var saved = Events.enterSource(file.getPath());
         try (var inPort = new InputPort(file)) {
             while (true) {
                 try {
                     var x = parse(inPort);
                     if (x == null) { continue; }
-                    else if (x.equals(eof)) { return; }
+                    else if (x == eof) { return; }
                     evalAndPrint(x);
                 }
                 catch (Exception e) {
@@ -85,10 +263,106 @@ public final class Jispy {
         catch (IOException e) {
             throw new RuntimeException(e);
         }
+        finally {
+            Events.restoreSource(saved);
+        }
     }
 
     public Object evalScripts(@NotNull String program) {
-        return eval(parse(program), GlobalEnv);
+        var metrics = GlobalEnv.metrics;
+        if (metrics == null) { return evalCached(program); }
+        long start = System.nanoTime();
+        try {
+            return evalCached(program);
+        }
+        finally {
+            metrics.evaluated(System.nanoTime() - start);
+        }
+    }
+
+    private Object evalCached(@NotNull String program) {
+        var cache = parseCache;
+        if (cache == null) { return eval(parse(program), GlobalEnv); }
+        var entry = cache.get(program);
+        if (entry == null) {
+            var macros = macro_table;
+            var x = parse(program);
+            if (x == null) { return null; }
+            Node node;
+            try {
+                node = Analyzer.analyze(x);
+            }
+            catch (RuntimeException e) {
+                var metrics = GlobalEnv.metrics;
+                if (metrics != null) { metrics.failed(e); }
+                throw e;
+            }
+            entry = new ParseCache.Entry(x, node);
+            if (macro_table == macros) { cache.put(program, entry); }
+        }
+        return eval(entry.form, entry.node, GlobalEnv);
+    }
+
+    /**
+     * starts counting and registers the counters of this interpreter with the platform MBean server
+     *
+     * @return name of the {@link InterpreterMetricsMBean}
+     */
+    public synchronized ObjectName registerMetrics() {
+        if (metricsName != null) { return metricsName; }
+        var metrics = new InterpreterMetrics(() -> GlobalEnv.bindings().size(), () -> macro_table.size());
+        try {
+            var name = new ObjectName("org.nathan.jispy:type=Interpreter,id=" + interpreters.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new StandardMBean(metrics, InterpreterMetricsMBean.class), name);
+            GlobalEnv.metrics = metrics;
+            metricsName = name;
+            return name;
+        }
+        catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * stops counting and removes the MBean registered by {@link #registerMetrics()}
+     */
+    public synchronized void unregisterMetrics() {
+        if (metricsName == null) { return; }
+        GlobalEnv.metrics = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+        }
+        catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+        finally {
+            metricsName = null;
+        }
+    }
+
+    /**
+     * evaluates program with the scheme procedures it runs on this thread sampled by profiler
+     */
+    public Object evalScripts(@NotNull String program, @NotNull Profiler profiler) {
+        return profiler.attach(() -> evalScripts(program));
+    }
+
+    /**
+     * @param size number of programs whose expanded and analyzed forms {@link #evalScripts(String)} keeps,
+     *             0 for none. the forms are dropped whenever a macro is defined
+     */
+    public void setParseCacheSize(int size) {
+        if (size < 0) { throw new IllegalArgumentException("negative cache size " + size); }
+        parseCache = size == 0 ? null : new ParseCache(size);
+    }
+
+    public long getParseCacheHits() {
+        return parseCache == null ? 0 : parseCache.hits();
+    }
+
+    public long getParseCacheMisses() {
+        return parseCache == null ? 0 : parseCache.misses();
     }
 
     private void evalAndPrint(Object x) {
@@ -98,95 +372,215 @@ public final class Jispy {
         }
     }
 
-    public void loadLib(@NotNull File file){
-        try (var inPort = new InputPort(file)) {
-            while (true) {
-                try {
-                    var x = parse(inPort);
-                    if (x == null) { continue; }
-                    else if (x.equals(eof)) { return; }
-                    eval(x, GlobalEnv);
-                }
-                catch (Exception e) {
-                    e.printStackTrace(System.err);
-                }
-            }
+    /**
+     * @param directory where the expanded forms of loaded files are kept, or null for none. defaults to
+     *                  the jispy.cache system property
+     */
+    public static void setCacheDirectory(File directory) {
+        expansionCache = directory == null ? null : new ExpansionCache(directory);
+    }
 
+    /**
+     * evaluates the forms of file. with a cache directory, the expanded forms are read from the cache when
+     * neither the file nor the macros defined before loading changed, otherwise they are cached
+     */
+    public void loadLib(@NotNull File file) {
+        byte[] source;
+        try {
+            source = Files.readAllBytes(file.toPath());
         }
         catch (IOException e) {
             throw new RuntimeException(e);
         }
+        var event = new Events.Load();
+        event.start();
+        var saved = Events.enterSource(file.getPath());
+        try {
+            load(source);
+        }
+        finally {
+            event.finish(source.length);
+            Events.restoreSource(saved);
+        }
     }
 
-    static void loadLib(String fileName, Jispy interpreter) {
-        var file = new File(fileName);
-        try (var inPort = new InputPort(file)) {
-            while (true) {
+    private void load(@NotNull byte[] source) {
+        var cache = expansionCache;
+        if (cache == null) {
+            load(new InputPort(new ByteArrayInputStream(source)));
+            return;
+        }
+        var key = cache.key(source, macro_table, GlobalEnv, evaluators);
+        if (key == null) {
+            load(new InputPort(new ByteArrayInputStream(source)));
+            return;
+        }
+        var forms = cache.read(key);
+        if (forms != null) {
+            for (var x : forms) {
                 try {
-                    var x = interpreter.parse(inPort);
-                    if (x == null) { continue; }
-                    else if (x.equals(eof)) { return; }
-                    eval(x, interpreter.GlobalEnv);
+                    evalExpanded(x);
                 }
                 catch (Exception e) {
                     e.printStackTrace(System.err);
                 }
             }
-
+            return;
         }
-        catch (IOException e) {
-            throw new RuntimeException(e);
+        var saved = expanded;
+        expanded = new ArrayList<>();
+        try {
+            if (load(new InputPort(new ByteArrayInputStream(source)))) { cache.write(key, expanded); }
+        }
+        finally {
+            expanded = saved;
         }
     }
 
-    static Object eval(Object x, @NotNull Environment env) {
+    static void loadLib(String fileName, Jispy interpreter) {
+        interpreter.loadLib(new File(fileName));
+    }
+
+    /**
+     * @return whether every form was expanded without errors
+     */
+    boolean load(@NotNull InputPort inPort) {
+        boolean expandedAll = true;
         while (true) {
-            if (x instanceof Symbol) { return env.find(x).get(x); }
-            else if (!(x instanceof List)) { return x; }
-            List<Object> l = (List<Object>) x;
-            var op = l.get(0);
-            if (op.equals(_quote)) { return l.get(1); }
-            else if (op.equals(_if)) {
-                var test = l.get(1);
-                var conseq = l.get(2);
-                var alt = l.get(3);
-                boolean testBool = isTrue(eval(test, env));
-                if (testBool) { x = conseq; }
-                else { x = alt; }
+            Object x;
+            try {
+                x = parse(inPort);
             }
-            else if (op.equals(_set)) {
-                var v = l.get(1);
-                var exp = l.get(2);
-                env.find(v).put(v, eval(exp, env));
-                return null;
+            catch (Exception e) {
+                e.printStackTrace(System.err);
+                expandedAll = false;
+                continue;
             }
-            else if (op.equals(_define)) {
-                var v = l.get(1);
-                var exp = l.get(2);
-                env.put(v, eval(exp, env));
-                return null;
+            if (x == eof) { return expandedAll; }
+            else if (x == null) { continue; }
+            if (expanded != null) { expanded.add(x); }
+            try {
+                eval(x, GlobalEnv);
             }
-            else if (op.equals(_lambda)) {
-                var vars = l.get(1);
-                var exp = l.get(2);
-                return Procedure.newProcedure(vars, exp, env);
+            catch (Exception e) {
+                e.printStackTrace(System.err);
             }
-            else if (op.equals(_begin)) {
-                for (var exp : l.subList(1, l.size() - 1)) eval(exp, env);
-                x = l.get(l.size() - 1);
+        }
+    }
+
+    /**
+     * evaluates a form recorded by the expansion cache
+     */
+    private void evalExpanded(Object x) {
+        if (x instanceof List && !((List<?>) x).isEmpty() && ((List<?>) x).get(0) == _define_macro) {
+            var l = (List<?>) x;
+            defineMacro(x, (Symbol) l.get(1), l.get(2));
+        }
+        else { eval(x, GlobalEnv); }
+    }
+
+    private void defineMacro(Object x, @NotNull Symbol name, Object expansion) {
+        if (GlobalEnv.frozen) { throw new IllegalStateException("global environment is shared by sessions"); }
+        var proc = eval(expansion, GlobalEnv);
+        require(x, proc instanceof Lambda, "macro must be a procedure");
+        macro_table = macro_table.put(name, proc);
+        if (parseCache != null) { parseCache.clear(); }
+        if (expanded != null) { expanded.add(treeList(_define_macro, name, expansion)); }
+    }
+
+    static Object eval(Object x, @NotNull Environment env) {
+        return eval(x, null, env);
+    }
+
+    /**
+     * @param node x analyzed, null to analyze it here
+     */
+    static Object eval(Object x, Node node, @NotNull Environment env) {
+        var event = new Events.Eval();
+        event.start();
+        var metrics = env.metrics;
+        if (metrics != null) { metrics.forms.increment(); }
+        try {
+            var analyzed = node != null ? node : Analyzer.analyze(x);
+            return env.enter(() -> env.stackless ? Machine.run(analyzed, env.root) : analyzed.eval(env.root));
+        }
+        catch (RuntimeException e) {
+            if (metrics != null && Environment.current() == null) { metrics.failed(e); }
+            throw e;
+        }
+        finally {
+            event.finish(x);
+        }
+    }
+
+    static Object execute(@NotNull Node x, @NotNull Frame env) {
+        return execute(x, env, null);
+    }
+
+    /**
+     * @param entered lambda whose body x is, recorded by an attached {@link Profiler}
+     */
+    static Object execute(@NotNull Node x, @NotNull Frame env, Node.LambdaNode entered) {
+        if (env.global.stackless) { return Machine.runNested(x, env); }
+        var stack = Profiler.stack();
+        if (stack == null) { return execute(x, env, null, 0); }
+        int base = stack.depth;
+        if (entered != null) { stack.enter(base, entered); }
+        try {
+            return execute(x, env, stack, base);
+        }
+        finally {
+            stack.depth = base;
+        }
+    }
+
+    /**
+     * @param base depth of the frame of this loop in stack, each tail call replaces it
+     */
+    private static Object execute(@NotNull Node x, @NotNull Frame env, Profiler.ShadowStack stack, int base) {
+        Node.LambdaNode current = null;
+        while (true) {
+            if (x instanceof Node.If) {
+                var n = (Node.If) x;
+                if (isTrue(n.test.eval(env))) { x = n.consequence; }
+                else { x = n.alternative; }
             }
-            else {
-                Environment finalEnv = env;
-                List<Object> exps = l.stream().map(exp -> eval(exp, finalEnv)).collect(Collectors.toList());
-                var proc = exps.get(0);
-                exps = exps.subList(1, exps.size());
-                if (proc instanceof Procedure) {
+            else if (x instanceof Node.Begin) {
+                var body = ((Node.Begin) x).body;
+                int last = body.length - 1;
+                for (int i = 0; i < last; i++) body[i].eval(env);
+                x = body[last];
+            }
+            else if (x instanceof Node.Call) {
+                var n = (Node.Call) x;
+                var proc = n.operator.eval(env);
+                var operands = n.operands;
+                var values = new Object[operands.length];
+                for (int i = 0; i < values.length; i++) values[i] = operands[i].eval(env);
+                while (true) {
+                    if (!(proc instanceof Procedure)) { return ((Lambda) proc).apply(Arrays.asList(values)); }
                     Procedure p = (Procedure) proc;
-                    x = p.expression();
-                    env = new Environment(p.parameters(), exps, p.environment());
+                    var lambda = p.lambda();
+                    var code = lambda.compiled;
+                    if (code == null) { code = lambda.profile(p.environment().global, lambda == current); }
+                    if (stack != null) { stack.enter(base, lambda); }
+                    var metrics = env.global.metrics;
+                    if (metrics != null) {
+                        metrics.calls.increment();
+                        if (current != null) { metrics.tailCalls.increment(); }
+                    }
+                    current = lambda;
+                    if (code == null) { break; }
+                    var res = code.enter(p, env.global, values);
+                    if (!(res instanceof CompiledBody.TailCall)) { return res; }
+                    proc = ((CompiledBody.TailCall) res).proc;
+                    values = ((CompiledBody.TailCall) res).args;
                 }
-                else { return ((Lambda) proc).apply(exps); }
+                var p = (Procedure) proc;
+                x = p.lambda().body;
+                env = Frame.bind(p.lambda(), values, p.environment(), env.global);
             }
+            else { return x.eval(env); }
         }
     }
 
@@ -195,20 +589,31 @@ public final class Jispy {
     }
 
     static Object parse(@NotNull Object in, Jispy interpreter) {
-        if (in instanceof String) {
-            var t = read(new InputPort((String) in));
-            return interpreter.expand(t, true);
+        InputPort port;
+        if (in instanceof String) { port = new InputPort((String) in); }
+        else if (in instanceof InputPort) { port = (InputPort) in; }
+        else { throw new RuntimeException(); }
+        try {
+            var parse = new Events.Parse();
+            parse.start();
+            var t = read(port);
+            parse.finish(t);
+            var expand = new Events.Expand();
+            expand.start();
+            var x = interpreter.expand(t, true);
+            expand.finish(x);
+            return x;
         }
-        else if (in instanceof InputPort) {
-            var t = read((InputPort) in);
-            return interpreter.expand(t, true);
+        catch (RuntimeException e) {
+            var metrics = interpreter.GlobalEnv.metrics;
+            if (metrics != null) { metrics.failed(e); }
+            throw e;
         }
-        else { throw new RuntimeException(); }
     }
 
     private static @NotNull Object read(@NotNull InputPort inPort) {
         var token = inPort.nextToken();
-        if (token.equals(eof)) { return eof; }
+        if (token == eof) { return eof; }
         else { return readAhead(token, inPort); }
 
     }
@@ -227,9 +632,20 @@ public final class Jispy {
                 }
             }
         }
+        else if (token.equals("#(") || token.equals("#f64(") || token.equals("#s64(")) {
+            var l = new ArrayList<>();
+            while (true) {
+                var element = inPort.nextToken();
+                if (element.equals(")")) { break; }
+                l.add(Pair.fromTree(readAhead(element, inPort)));
+            }
+            if (token.equals("#f64(")) { return Vectors.f64vectorOf(l); }
+            else if (token.equals("#s64(")) { return Vectors.s64vectorOf(l); }
+            else { return l.toArray(); }
+        }
         else if (token.equals(")")) { throw new SyntaxException("unexpected )"); }
         else if (quotes.containsKey(token)) { return treeList(quotes.get(token), read(inPort)); }
-        else if (token.equals(eof)) { throw new SyntaxException("unexpected EOF in list"); }
+        else if (token == eof) { throw new SyntaxException("unexpected EOF in list"); }
         else {
             return toAtom((String) token);
         }
@@ -240,7 +656,7 @@ public final class Jispy {
         else if (x.equals("#f")) { return false; }
         else if (x.startsWith("\"") && x.endsWith("\"")) { return x.substring(1, x.length() - 1); }
         else if (stringContainsDigit(x)) {
-            var isInt = MagicUtils.tryParseInt(x);
+            var isInt = NumericOperators.tryParseInteger(x);
             if (isInt.isPresent()) {
                 return isInt.get();
             }
@@ -255,7 +671,7 @@ public final class Jispy {
                         return isComplex.get();
                     }
                     else {
-                        return new Symbol(x);
+                        return Symbol.of(x);
                     }
                 }
             }
@@ -266,7 +682,7 @@ public final class Jispy {
                 return isComplex.get();
             }
             else {
-                return new Symbol(x);
+                return Symbol.of(x);
             }
         }
     }
@@ -290,6 +706,7 @@ public final class Jispy {
             return s.toString();
         }
         else if (x instanceof Complex) { return ComplexFormat.getInstance().format((Complex) x); }
+        else if (Vectors.isVector(x)) { return Vectors.toString(x); }
         else { return x.toString(); }
     }
 
@@ -302,22 +719,25 @@ public final class Jispy {
         if (!(x instanceof List)) { return x; }
         List<Object> l = (List<Object>) x;
         var op = l.get(0);
-        if (op.equals(_quote)) {
+        if (op == _quote) {
             require(x, l.size() == 2);
             return x;
         }
-        else if (op.equals(_if)) {
-            if (l.size() == 3) { l.add(null); }
+        else if (op == _if) {
+            if (l.size() == 3) {
+                l = new ArrayList<>(l);
+                l.add(null);
+            }
             require(x, l.size() == 4);
             return l.stream().map(this::expand).collect(Collectors.toList());
         }
-        else if (op.equals(_set)) {
+        else if (op == _set) {
             require(x, l.size() == 3);
             var v = l.get(1);
             require(x, v instanceof Symbol, "can set! only a symbol");
             return treeList(_set, v, expand(l.get(2)));
         }
-        else if (op.equals(_define) || op.equals(_define_macro)) {
+        else if (op == _define || op == _define_macro) {
             require(x, l.size() >= 3);
             var v = l.get(1);
             var body = l.subList(2, l.size());
@@ -333,21 +753,19 @@ public final class Jispy {
                 require(x, l.size() == 3);
                 require(x, v instanceof Symbol, "can define only a symbol");
                 var exp = expand(l.get(2));
-                if (op.equals(_define_macro)) {
+                if (op == _define_macro) {
                     require(x, topLevel, "define-macro only allowed at top level");
-                    var proc = eval(exp, GlobalEnv);
-                    require(x, proc instanceof Lambda, "macro must be a procedure");
-                    macro_table.put((Symbol) v, (Lambda) proc);
+                    defineMacro(x, (Symbol) v, exp);
                     return null;
                 }
                 return treeList(_define, v, exp);
             }
         }
-        else if (op.equals(_begin)) {
+        else if (op == _begin) {
             if (l.size() == 1) { return null; }
             else { return l.stream().map(i -> expand(i, topLevel)).collect(Collectors.toList()); }
         }
-        else if (op.equals(_lambda)) {
+        else if (op == _lambda) {
             require(x, l.size() >= 3);
             var vars = l.get(1);
             var body = l.subList(2, l.size());
@@ -364,12 +782,17 @@ public final class Jispy {
             }
             return treeList(_lambda, vars, expand(exp));
         }
-        else if (op.equals(_quasi_quote)) {
+        else if (op == _quasi_quote) {
             require(x, l.size() == 2);
             return expandQuasiQuote(l.get(1));
         }
-        else if (op instanceof Symbol && macro_table.containsKey(op)) {
-            return expand(macro_table.get(op).apply(l.subList(1, l.size())), topLevel);
+        else if (op instanceof Symbol && macro_table.get(op, null) != null) {
+            var event = new Events.MacroExpansion();
+            event.start();
+            var expansion = ((Lambda) macro_table.get(op, null)).apply(l.subList(1, l.size()));
+            event.macro = op.toString();
+            event.finish(expansion);
+            return expand(expansion, topLevel);
         }
         else { return l.stream().map(this::expand).collect(Collectors.toList()); }
     }
@@ -379,12 +802,12 @@ public final class Jispy {
             return treeList(_quote, x);
         }
         List<Object> l = (List<Object>) x;
-        require(x, !l.get(0).equals(_unquote_splicing), "can't splice here");
-        if (l.get(0).equals(_unquote)) {
+        require(x, l.get(0) != _unquote_splicing, "can't splice here");
+        if (l.get(0) == _unquote) {
             require(x, l.size() == 2);
             return l.get(1);
         }
-        else if (isPair(l.get(0)) && ((List<?>) l.get(0)).get(0).equals(_unquote_splicing)) {
+        else if (isPair(l.get(0)) && ((List<?>) l.get(0)).get(0) == _unquote_splicing) {
             require(l.get(0), ((List<?>) l.get(0)).size() == 2);
             return treeList(_append, ((List<?>) l.get(0)).get(1), expandQuasiQuote(l.subList(1, l.size())));
         }
@@ -433,16 +856,40 @@ public final class Jispy {
         return r;
     }
 
+    /**
+     * (guard (var clause...) body...) calls the clauses, (test expr...) or (else expr...), with var bound to
+     * the raised object. when no clause matches the object is raised again to the enclosing handler
+     */
+    private static @NotNull Object guard(@NotNull List<Object> args) {
+        require(args, args.size() >= 2 && args.get(0) instanceof List && !isNil(args.get(0)), " illegal guard");
+        var spec = (List<Object>) args.get(0);
+        var var = spec.get(0);
+        require(spec, var instanceof Symbol, " illegal guard variable");
+        Object dispatch = treeList(Symbol.of("raise"), var);
+        for (int i = spec.size() - 1; i >= 1; i--) {
+            require(spec, spec.get(i) instanceof List && ((List<?>) spec.get(i)).size() >= 2, " illegal guard clause");
+            var clause = (List<Object>) spec.get(i);
+            List<Object> body = treeList(_begin);
+            body.addAll(clause.subList(1, clause.size()));
+            if (clause.get(0) == _else) { dispatch = body; }
+            else { dispatch = treeList(_if, clause.get(0), body, dispatch); }
+        }
+        List<Object> thunk = treeList(_lambda, Nil);
+        thunk.addAll(args.subList(1, args.size()));
+        return treeList(Symbol.of("call-with-guard"), thunk, treeList(_lambda, treeList(var), dispatch));
+    }
+
     static @NotNull Object callcc(@NotNull Lambda proc) {
         var ball = new RuntimeWarning("Sorry, can't continue this continuation any longer.");
         try {
             return proc.apply(treeList((Lambda) objects -> {
+                InterpreterMetrics.escaped();
                 raise(objects.get(0), ball);
                 return null;
             }));
         }
         catch (RuntimeWarning w) {
-            if (w.equals(ball)) {
+            if (w == ball) {
                 return ball.returnValue;
             }
             else {
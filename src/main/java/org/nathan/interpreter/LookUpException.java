@@ -6,4 +6,9 @@ class LookUpException extends NoSuchElementException{
     LookUpException(String s) {
         super(s);
     }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return Jispy.debug ? super.fillInStackTrace() : this;
+    }
 }
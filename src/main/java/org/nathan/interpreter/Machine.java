@@ -0,0 +1,538 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.nathan.interpreter.Jispy.Nil;
+
+/**
+ * evaluator keeping its continuation in immutable heap frames instead of on the Java stack, used when
+ * {@link Environment#stackless} is set. recursion depth is limited by memory only, and call/cc captures
+ * continuations that can be re-entered any number of times.
+ * <p>
+ * apply, map, call/cc and dynamic-wind run inside the machine. a dynamic-wind extent is a wind frame of the
+ * continuation: jumping to a continuation runs the after thunks of the extents it leaves, innermost first,
+ * then the before thunks of those it enters, outermost first, so re-entering an extent runs before again.
+ * an error or escape leaving the machine runs the after thunks of its extents.
+ * <p>
+ * other builtins still run on the Java stack, and procedures they call are evaluated by a nested machine
+ * whose continuations end at that builtin. such a continuation can be left, but not re-entered once the
+ * builtin returned: the rest of the computation around the builtin is not in its frames. the bytecode
+ * tier is not used in this mode
+ */
+final class Machine {
+    private final Halt halt;
+    private final Object callcc;
+    private final Object apply;
+    private final Object map;
+    private final Object dynamicWind;
+
+    private Node control;
+    private Frame env;
+    private Continuation k;
+    private Object value;
+    /**
+     * whether value is passed to k, otherwise control is evaluated in env
+     */
+    private boolean returning;
+
+    private Machine(@NotNull Environment global, boolean nested) {
+        halt = new Halt(nested);
+        callcc = global.builtin(Symbol.of("call/cc"));
+        apply = global.builtin(Symbol.of("apply"));
+        map = global.builtin(Symbol.of("map"));
+        dynamicWind = global.builtin(Symbol.of("dynamic-wind"));
+    }
+
+    /**
+     * evaluates a top level form
+     */
+    static Object run(@NotNull Node x, @NotNull Frame env) {
+        return new Machine(env.global, false).execute(x, env);
+    }
+
+    /**
+     * evaluates the body of a procedure called by a builtin
+     */
+    static Object runNested(@NotNull Node x, @NotNull Frame env) {
+        return new Machine(env.global, true).execute(x, env);
+    }
+
+    private Object execute(@NotNull Node x, @NotNull Frame frame) {
+        control = x;
+        env = frame;
+        k = halt;
+        returning = false;
+        try {
+            while (true) {
+                try {
+                    while (true) {
+                        if (!returning) { evaluate(); }
+                        else if (k instanceof Halt) { return value; }
+                        else { resume(); }
+                    }
+                }
+                catch (Jump j) {
+                    if (!reachable(j.target)) { throw j; }
+                    transfer(j.target, j.value);
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            unwind();
+            throw e;
+        }
+        finally {
+            halt.finished = true;
+        }
+    }
+
+    /**
+     * a continuation of a top level machine that already returned is continued by another top level
+     * machine, up to its end
+     */
+    private boolean reachable(@NotNull Continuation target) {
+        return target.base == halt || !halt.nested && !target.base.nested && target.base.finished;
+    }
+
+    /**
+     * @throws IllegalStateException when target ends at a builtin that returned
+     */
+    private static void checkLive(@NotNull Continuation target) {
+        if (target.base.nested && target.base.finished) {
+            throw new IllegalStateException(
+                    "continuation captured under a builtin that returned can not be re-entered");
+        }
+    }
+
+    /**
+     * continues target with v after running the wind thunks between the current continuation and target
+     */
+    private void transfer(@NotNull Continuation target, Object v) {
+        var from = winds(k);
+        var to = winds(target);
+        var thunks = new ArrayList<>();
+        for (var w : from) {
+            if (!to.contains(w)) { thunks.add(w.after); }
+        }
+        for (int i = to.size() - 1; i >= 0; i--) {
+            if (!from.contains(to.get(i))) { thunks.add(to.get(i).before); }
+        }
+        if (thunks.isEmpty()) { k = target; }
+        else { k = new TransferK(thunks.toArray(), 0, target, v, k); }
+        value = v;
+        returning = true;
+    }
+
+    /**
+     * @return wind frames of c, innermost first
+     */
+    private static @NotNull List<WindK> winds(@NotNull Continuation c) {
+        var res = new ArrayList<WindK>();
+        for (; c != null; c = c.next) {
+            if (c instanceof WindK) { res.add((WindK) c); }
+        }
+        return res;
+    }
+
+    /**
+     * runs the after thunks of the extents of this machine, as the Java stack unwinds through it
+     */
+    private void unwind() {
+        for (var c = k; c != null; c = c.next) {
+            if (c instanceof WindK) { ((Lambda) ((WindK) c).after).apply(Nil); }
+        }
+        k = halt;
+    }
+
+    private void evaluate() {
+        var x = control;
+        if (x instanceof Node.If) {
+            var n = (Node.If) x;
+            k = new IfK(n, env, k);
+            control = n.test;
+        }
+        else if (x instanceof Node.Begin) {
+            var body = ((Node.Begin) x).body;
+            if (body.length > 1) { k = new BeginK((Node.Begin) x, 1, env, k); }
+            control = body[0];
+        }
+        else if (x instanceof Node.Call) { evaluateOperands((Node.Call) x, 0, Nil, env); }
+        else if (x instanceof Node.LocalSet) { assignAfter(x, ((Node.LocalSet) x).value); }
+        else if (x instanceof Node.GlobalSet) { assignAfter(x, ((Node.GlobalSet) x).value); }
+        else if (x instanceof Node.LocalDefine) { assignAfter(x, ((Node.LocalDefine) x).value); }
+        else if (x instanceof Node.GlobalDefine) { assignAfter(x, ((Node.GlobalDefine) x).value); }
+        else {
+            value = x.eval(env);
+            returning = true;
+        }
+    }
+
+    private void assignAfter(@NotNull Node assignment, @NotNull Node valueNode) {
+        k = new AssignK(assignment, env, k);
+        control = valueNode;
+    }
+
+    private void resume() {
+        var f = k;
+        if (f instanceof ArgK) {
+            var a = (ArgK) f;
+            k = a.next;
+            evaluateOperands(a.call, a.index + 1, Pair.cons(value, a.values), a.env);
+        }
+        else if (f instanceof IfK) {
+            var i = (IfK) f;
+            k = i.next;
+            control = Utils.isTrue(value) ? i.node.consequence : i.node.alternative;
+            env = i.env;
+            returning = false;
+        }
+        else if (f instanceof BeginK) {
+            var b = (BeginK) f;
+            var body = b.node.body;
+            if (b.index == body.length - 1) { k = b.next; }
+            else { k = new BeginK(b.node, b.index + 1, b.env, b.next); }
+            control = body[b.index];
+            env = b.env;
+            returning = false;
+        }
+        else if (f instanceof AssignK) {
+            var a = (AssignK) f;
+            k = a.next;
+            assign(a.node, a.env, value);
+            value = null;
+        }
+        else if (f instanceof MapK) {
+            var m = (MapK) f;
+            k = m.next;
+            mapStep(m.proc, m.lists, Pair.cons(value, m.results));
+        }
+        else if (f instanceof BeforeK) {
+            var b = (BeforeK) f;
+            k = new WindK(b.before, b.after, b.next);
+            applyProcedure(b.thunk, new Object[0]);
+        }
+        else if (f instanceof WindK) {
+            var w = (WindK) f;
+            k = new ValueK(value, w.next);
+            applyProcedure(w.after, new Object[0]);
+        }
+        else if (f instanceof ValueK) {
+            var v = (ValueK) f;
+            k = v.next;
+            value = v.value;
+        }
+        else if (f instanceof TransferK) {
+            var t = (TransferK) f;
+            if (t.index == t.thunks.length) {
+                k = t.target;
+                value = t.value;
+            }
+            else {
+                k = new TransferK(t.thunks, t.index + 1, t.target, t.value, t.next);
+                applyProcedure(t.thunks[t.index], new Object[0]);
+            }
+        }
+        else { throw new IllegalStateException(f.getClass().getName()); }
+    }
+
+    private static void assign(@NotNull Node x, @NotNull Frame env, Object value) {
+        if (x instanceof Node.LocalSet) {
+            var s = (Node.LocalSet) x;
+            for (int d = s.depth; d > 0; d--) env = env.outer;
+            env.slots[s.slot] = value;
+        }
+        else if (x instanceof Node.GlobalSet) { env.global.assign(((Node.GlobalSet) x).name, value); }
+        else if (x instanceof Node.LocalDefine) { env.slots[((Node.LocalDefine) x).slot] = value; }
+        else { env.global.put(((Node.GlobalDefine) x).name, value); }
+    }
+
+    /**
+     * operator and operands are evaluated left to right, leaves are evaluated without pushing a frame
+     *
+     * @param index position in the call of the next form to evaluate, 0 is the operator
+     * @param values values of the forms before index, last first
+     */
+    private void evaluateOperands(@NotNull Node.Call call, int index, @NotNull List<Object> values, @NotNull Frame frame) {
+        var operands = call.operands;
+        while (index <= operands.length) {
+            var x = index == 0 ? call.operator : operands[index - 1];
+            if (x instanceof Node.If || x instanceof Node.Begin || x instanceof Node.Call
+                    || x instanceof Node.LocalSet || x instanceof Node.GlobalSet
+                    || x instanceof Node.LocalDefine || x instanceof Node.GlobalDefine) {
+                k = new ArgK(call, index, values, frame, k);
+                control = x;
+                env = frame;
+                returning = false;
+                return;
+            }
+            values = Pair.cons(x.eval(frame), values);
+            index++;
+        }
+        var args = new Object[operands.length];
+        for (int i = args.length - 1; i >= 0; i--) {
+            var p = (Pair) values;
+            args[i] = p.car;
+            values = p.cdr;
+        }
+        applyProcedure(((Pair) values).car, args);
+    }
+
+    /**
+     * calls proc with the current continuation, a procedure body replaces control without growing k
+     */
+    private void applyProcedure(Object proc, @NotNull Object[] args) {
+        if (proc instanceof Procedure) {
+            var p = (Procedure) proc;
+            var lambda = p.lambda();
+            if (env.global.metrics != null) { env.global.metrics.calls.increment(); }
+            control = lambda.body;
+            env = Frame.bind(lambda, args, p.environment(), env.global);
+            returning = false;
+        }
+        else if (proc instanceof Reentry) {
+            var target = ((Reentry) proc).target;
+            var v = args.length == 0 ? null : args[0];
+            if (env.global.metrics != null) { env.global.metrics.escapes.increment(); }
+            checkLive(target);
+            if (!reachable(target)) { throw new Jump(target, v); }
+            transfer(target, v);
+        }
+        else if (proc == callcc) {
+            if (args.length != 1) { throw new ArgumentsCountException(); }
+            applyProcedure(args[0], new Object[]{new Reentry(k)});
+        }
+        else if (proc == apply) {
+            if (args.length < 1) { throw new ArgumentsCountException(); }
+            applyProcedure(args[0], Arrays.copyOfRange(args, 1, args.length));
+        }
+        else if (proc == map) {
+            if (args.length < 1) { throw new ArgumentsCountException(); }
+            mapStep(args[0], Arrays.copyOfRange(args, 1, args.length), Nil);
+        }
+        else if (proc == dynamicWind) {
+            if (args.length != 3) { throw new ArgumentsCountException(); }
+            k = new BeforeK(args[0], args[1], args[2], k);
+            applyProcedure(args[0], new Object[0]);
+        }
+        else {
+            value = ((Lambda) proc).apply(Arrays.asList(args));
+            returning = true;
+        }
+    }
+
+    /**
+     * @param lists remaining elements of each list argument
+     * @param results results so far, last first
+     */
+    private void mapStep(Object proc, @NotNull Object[] lists, @NotNull List<Object> results) {
+        var cars = new Object[lists.length];
+        var rests = new Object[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            var l = (List<?>) lists[i];
+            if (l.isEmpty()) {
+                List<Object> res = Nil;
+                for (var r : results) res = Pair.cons(r, res);
+                value = res;
+                returning = true;
+                return;
+            }
+            cars[i] = Environment.car(l);
+            rests[i] = Environment.cdr(l);
+        }
+        k = new MapK(proc, rests, results, k);
+        applyProcedure(proc, cars);
+    }
+
+    /**
+     * frames are never mutated, so a captured continuation stays valid after it returned
+     */
+    private abstract static class Continuation {
+        final Continuation next;
+        /**
+         * bottom of the machine that created this frame
+         */
+        final Halt base;
+
+        Continuation(Continuation next) {
+            this.next = next;
+            this.base = next == null ? (Halt) this : next.base;
+        }
+    }
+
+    private static final class Halt extends Continuation {
+        /**
+         * whether the machine runs a procedure called by a builtin
+         */
+        final boolean nested;
+        boolean finished;
+
+        Halt(boolean nested) {
+            super(null);
+            this.nested = nested;
+        }
+    }
+
+    private static final class IfK extends Continuation {
+        final Node.If node;
+        final Frame env;
+
+        IfK(@NotNull Node.If node, @NotNull Frame env, @NotNull Continuation next) {
+            super(next);
+            this.node = node;
+            this.env = env;
+        }
+    }
+
+    private static final class BeginK extends Continuation {
+        final Node.Begin node;
+        /**
+         * next form of the body to evaluate
+         */
+        final int index;
+        final Frame env;
+
+        BeginK(@NotNull Node.Begin node, int index, @NotNull Frame env, @NotNull Continuation next) {
+            super(next);
+            this.node = node;
+            this.index = index;
+            this.env = env;
+        }
+    }
+
+    private static final class ArgK extends Continuation {
+        final Node.Call call;
+        final int index;
+        final List<Object> values;
+        final Frame env;
+
+        ArgK(@NotNull Node.Call call, int index, @NotNull List<Object> values, @NotNull Frame env,
+             @NotNull Continuation next) {
+            super(next);
+            this.call = call;
+            this.index = index;
+            this.values = values;
+            this.env = env;
+        }
+    }
+
+    private static final class AssignK extends Continuation {
+        final Node node;
+        final Frame env;
+
+        AssignK(@NotNull Node node, @NotNull Frame env, @NotNull Continuation next) {
+            super(next);
+            this.node = node;
+            this.env = env;
+        }
+    }
+
+    private static final class MapK extends Continuation {
+        final Object proc;
+        final Object[] lists;
+        final List<Object> results;
+
+        MapK(Object proc, @NotNull Object[] lists, @NotNull List<Object> results, @NotNull Continuation next) {
+            super(next);
+            this.proc = proc;
+            this.lists = lists;
+            this.results = results;
+        }
+    }
+
+    /**
+     * runs thunk of dynamic-wind once before returned
+     */
+    private static final class BeforeK extends Continuation {
+        final Object before;
+        final Object thunk;
+        final Object after;
+
+        BeforeK(Object before, Object thunk, Object after, @NotNull Continuation next) {
+            super(next);
+            this.before = before;
+            this.thunk = thunk;
+            this.after = after;
+        }
+    }
+
+    /**
+     * dynamic extent of a dynamic-wind thunk, runs after when the thunk returns
+     */
+    private static final class WindK extends Continuation {
+        final Object before;
+        final Object after;
+
+        WindK(Object before, Object after, @NotNull Continuation next) {
+            super(next);
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /**
+     * returns a saved value, ignoring the one it is given
+     */
+    private static final class ValueK extends Continuation {
+        final Object value;
+
+        ValueK(Object value, @NotNull Continuation next) {
+            super(next);
+            this.value = value;
+        }
+    }
+
+    /**
+     * runs the wind thunks of a jump one after the other, then continues target with value
+     */
+    private static final class TransferK extends Continuation {
+        final Object[] thunks;
+        final int index;
+        final Continuation target;
+        final Object value;
+
+        TransferK(@NotNull Object[] thunks, int index, @NotNull Continuation target, Object value,
+                  @NotNull Continuation next) {
+            super(next);
+            this.thunks = thunks;
+            this.index = index;
+            this.target = target;
+            this.value = value;
+        }
+    }
+
+    /**
+     * continuation captured by call/cc
+     */
+    private static final class Reentry implements Lambda {
+        final Continuation target;
+
+        Reentry(@NotNull Continuation target) {
+            this.target = target;
+        }
+
+        /**
+         * called from a builtin, the machine owning the target unwinds to it
+         */
+        @Override
+        public Object apply(List<Object> args) {
+            InterpreterMetrics.escaped();
+            checkLive(target);
+            throw new Jump(target, args.isEmpty() ? null : args.get(0));
+        }
+    }
+
+    private static final class Jump extends ControlSignal {
+        final Continuation target;
+        final Object value;
+
+        Jump(@NotNull Continuation target, Object value) {
+            super(null);
+            this.target = target;
+            this.value = value;
+        }
+    }
+}
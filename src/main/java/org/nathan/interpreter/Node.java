@@ -0,0 +1,258 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * executable form produced by {@link Analyzer} from an expanded expression
+ */
+abstract class Node {
+
+    abstract Object eval(@NotNull Frame env);
+
+    static final class Constant extends Node {
+        final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            return value;
+        }
+    }
+
+    static final class LocalRef extends Node {
+        final Symbol name;
+        final int depth;
+        final int slot;
+        /**
+         * slots of internal defines may be read before the define has run
+         */
+        final boolean checked;
+
+        LocalRef(@NotNull Symbol name, int depth, int slot, boolean checked) {
+            this.name = name;
+            this.depth = depth;
+            this.slot = slot;
+            this.checked = checked;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            for (int d = depth; d > 0; d--) env = env.outer;
+            var value = env.slots[slot];
+            if (checked && value == Frame.UNASSIGNED) { throw new LookUpException(name.toString()); }
+            return value;
+        }
+    }
+
+    static final class GlobalRef extends Node {
+        final Symbol name;
+
+        GlobalRef(@NotNull Symbol name) {
+            this.name = name;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            return env.global.lookup(name);
+        }
+    }
+
+    static final class LocalSet extends Node {
+        final int depth;
+        final int slot;
+        final Node value;
+
+        LocalSet(int depth, int slot, @NotNull Node value) {
+            this.depth = depth;
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            var v = value.eval(env);
+            for (int d = depth; d > 0; d--) env = env.outer;
+            env.slots[slot] = v;
+            return null;
+        }
+    }
+
+    static final class GlobalSet extends Node {
+        final Symbol name;
+        final Node value;
+
+        GlobalSet(@NotNull Symbol name, @NotNull Node value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            env.global.assign(name, value.eval(env));
+            return null;
+        }
+    }
+
+    static final class LocalDefine extends Node {
+        final int slot;
+        final Node value;
+
+        LocalDefine(int slot, @NotNull Node value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            env.slots[slot] = value.eval(env);
+            return null;
+        }
+    }
+
+    static final class GlobalDefine extends Node {
+        final Symbol name;
+        final Node value;
+
+        GlobalDefine(@NotNull Symbol name, @NotNull Node value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            env.global.put(name, value.eval(env));
+            return null;
+        }
+    }
+
+    static final class LambdaNode extends Node {
+        final Object parameters;
+        final int parameterCount;
+        final boolean variadic;
+        /**
+         * parameters followed by the internal defines of the body
+         */
+        final int frameSize;
+        final Node body;
+        /**
+         * name the lambda was defined with, null when anonymous
+         */
+        String name;
+        /**
+         * optimized tier, null while interpreted
+         */
+        volatile CompiledBody compiled;
+        int invocations;
+        int backEdges;
+        final AtomicInteger deoptimizations = new AtomicInteger();
+        private boolean uncompilable;
+
+        LambdaNode(@NotNull Object parameters, int parameterCount, boolean variadic, int frameSize,
+                   @NotNull Node body) {
+            this.parameters = parameters;
+            this.parameterCount = parameterCount;
+            this.variadic = variadic;
+            this.frameSize = frameSize;
+            this.body = body;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            return Procedure.newProcedure(this, env);
+        }
+
+        /**
+         * counts an interpreted entry, a back edge is a tail call of the lambda into itself
+         *
+         * @return the optimized code when this entry made the lambda hot
+         */
+        CompiledBody profile(@NotNull Environment global, boolean backEdge) {
+            if (backEdge) { backEdges++; }
+            else { invocations++; }
+            if (global.compiling && !uncompilable && invocations + backEdges > global.tierThreshold) {
+                int generation = deoptimizations.get();
+                var code = Compiler.compile(this, global);
+                if (code == null) {
+                    uncompilable = true;
+                    return null;
+                }
+                compiled = code;
+                if (generation != deoptimizations.get()) {
+                    // a deoptimize running since the compile started may have missed this code
+                    code.valid = false;
+                    compiled = null;
+                    return null;
+                }
+                return code;
+            }
+            return null;
+        }
+
+        /**
+         * back to the interpreter after a global the compiled code relied on changed,
+         * code being compiled on another thread at the same time is discarded once published
+         */
+        void deoptimize() {
+            deoptimizations.incrementAndGet();
+            var code = compiled;
+            if (code == null) { return; }
+            code.valid = false;
+            compiled = null;
+            invocations = 0;
+            backEdges = 0;
+        }
+    }
+
+    /**
+     * if, begin and call may continue in tail position, so they are run by {@link Jispy#execute}
+     */
+    static final class If extends Node {
+        final Node test;
+        final Node consequence;
+        final Node alternative;
+
+        If(@NotNull Node test, @NotNull Node consequence, @NotNull Node alternative) {
+            this.test = test;
+            this.consequence = consequence;
+            this.alternative = alternative;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            return Jispy.execute(this, env);
+        }
+    }
+
+    static final class Begin extends Node {
+        final Node[] body;
+
+        Begin(@NotNull Node[] body) {
+            this.body = body;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            return Jispy.execute(this, env);
+        }
+    }
+
+    static final class Call extends Node {
+        final Node operator;
+        final Node[] operands;
+
+        Call(@NotNull Node operator, @NotNull Node[] operands) {
+            this.operator = operator;
+            this.operands = operands;
+        }
+
+        @Override
+        Object eval(@NotNull Frame env) {
+            return Jispy.execute(this, env);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.nathan.interpreter.Jispy.Nil;
+
+/**
+ * dynamic-wind, exception handlers, raise and guard. handlers installed by with-exception-handler and
+ * guard form a per thread stack, innermost first. raise calls the innermost handler in place, a guard
+ * on top makes raise unwind to that guard with a {@link Condition} instead
+ */
+final class NonLocalExit {
+    private static final Object GUARD = new Object();
+    private static final ThreadLocal<List<Object>> handlers = ThreadLocal.withInitial(() -> Nil);
+
+    private NonLocalExit() {
+    }
+
+    /**
+     * dynamic-wind outside the stackless machine, where continuations only escape, so the extent is left
+     * once and never re-entered. {@link Machine} runs dynamic-wind itself with wind frames, and refuses to
+     * re-enter a continuation captured under a call of this
+     */
+    static Object dynamicWind(@NotNull Lambda before, @NotNull Lambda thunk, @NotNull Lambda after) {
+        before.apply(Nil);
+        try {
+            return thunk.apply(Nil);
+        }
+        finally {
+            after.apply(Nil);
+        }
+    }
+
+    /**
+     * errors signalled by builtins reach the handler after the thunk was unwound, and are rethrown when it returns
+     */
+    static Object withExceptionHandler(@NotNull Lambda handler, @NotNull Lambda thunk) {
+        var saved = handlers.get();
+        handlers.set(Pair.cons(handler, saved));
+        try {
+            return thunk.apply(Nil);
+        }
+        catch (ControlSignal | Condition e) {
+            throw e;
+        }
+        catch (RuntimeException e) {
+            handlers.set(saved);
+            handler.apply(Collections.singletonList(e));
+            throw e;
+        }
+        finally {
+            handlers.set(saved);
+        }
+    }
+
+    /**
+     * @param continuable whether the value of the handler is returned, otherwise the object is passed
+     *                    on to the next handler after the innermost one returned
+     */
+    static Object raise(Object obj, boolean continuable) {
+        var saved = handlers.get();
+        if (saved.isEmpty() || ((Pair) saved).car == GUARD) { throw new Condition(obj); }
+        var handler = (Lambda) ((Pair) saved).car;
+        handlers.set(((Pair) saved).cdr);
+        try {
+            var res = handler.apply(Collections.singletonList(obj));
+            if (continuable) { return res; }
+            return raise(obj, false);
+        }
+        finally {
+            handlers.set(saved);
+        }
+    }
+
+    /**
+     * @param handler called with the raised object, or the exception of a failed builtin
+     */
+    static Object guard(@NotNull Lambda thunk, @NotNull Lambda handler) {
+        var saved = handlers.get();
+        handlers.set(Pair.cons(GUARD, saved));
+        Object raised;
+        try {
+            return thunk.apply(Nil);
+        }
+        catch (ControlSignal s) {
+            throw s;
+        }
+        catch (Condition c) {
+            raised = c.payload;
+        }
+        catch (RuntimeException e) {
+            raised = e;
+        }
+        finally {
+            handlers.set(saved);
+        }
+        return handler.apply(Collections.singletonList(raised));
+    }
+}
@@ -5,19 +5,33 @@ import org.jetbrains.annotations.NotNull;
 import org.nathan.interpreter.literalLexer.FloatingPointLiterals;
 import org.nathan.interpreter.magic.MagicUtils;
 
+import java.math.BigInteger;
 import java.util.Optional;
 
+/**
+ * exact integers are Integer while they fit in an int and BigInteger once a result overflows,
+ * BigInteger results are turned back into Integer whenever they fit again
+ */
 class NumericOperators{
+    private static final BigInteger INT_MIN = BigInteger.valueOf(Integer.MIN_VALUE);
+    private static final BigInteger INT_MAX = BigInteger.valueOf(Integer.MAX_VALUE);
+
     static boolean lessThan(@NotNull Object a, @NotNull Object b){
+        if(a instanceof Integer && b instanceof Integer){ return (Integer) a < (Integer) b; }
+        else if(isExact(a) && isExact(b)){ return big(a).compareTo(big(b)) < 0; }
         return value(a) < value(b);
     }
 
     static boolean lessOrEqual(@NotNull Object a, @NotNull Object b){
+        if(a instanceof Integer && b instanceof Integer){ return (Integer) a <= (Integer) b; }
+        else if(isExact(a) && isExact(b)){ return big(a).compareTo(big(b)) <= 0; }
         return value(a) <= value(b);
     }
 
     static boolean equal(@NotNull Object a, @NotNull Object b){
-        if((!(a instanceof Complex)) && (!(b instanceof Complex))){
+        if(a instanceof Integer && b instanceof Integer){ return ((Integer) a).intValue() == (Integer) b; }
+        else if(isExact(a) && isExact(b)){ return big(a).equals(big(b)); }
+        else if((!(a instanceof Complex)) && (!(b instanceof Complex))){
             return value(a) == value(b);
         }
         else{
@@ -26,7 +40,8 @@ class NumericOperators{
     }
 
     static @NotNull Object negative(@NotNull Object a){
-        if(a instanceof Integer){ return -(Integer) a; }
+        if(a instanceof Integer){ return integer(-(long) (Integer) a); }
+        else if(a instanceof BigInteger){ return integer(((BigInteger) a).negate()); }
         else if(a instanceof Double){ return -(Double) a; }
         else if(a instanceof Complex){ return ((Complex) a).negate(); }
         else{ throw new SyntaxException("not number"); }
@@ -36,9 +51,36 @@ class NumericOperators{
     static double value(@NotNull Object o){
         if(o instanceof Double){ return (Double) o; }
         else if(o instanceof Integer){ return (Integer) o; }
+        else if(o instanceof BigInteger){ return ((BigInteger) o).doubleValue(); }
         else{ throw new SyntaxException("not number"); }
     }
 
+    static boolean isExact(Object o){
+        return o instanceof Integer || o instanceof BigInteger;
+    }
+
+    static boolean isNumber(Object o){
+        return o instanceof Integer || o instanceof Double || o instanceof BigInteger || o instanceof Complex;
+    }
+
+    /**
+     * @return the fixnum when the value fits in an int, otherwise a BigInteger
+     */
+    static @NotNull Object integer(long l){
+        if((int) l == l){ return (int) l; }
+        else{ return BigInteger.valueOf(l); }
+    }
+
+    static @NotNull Object integer(@NotNull BigInteger b){
+        if(b.compareTo(INT_MIN) >= 0 && b.compareTo(INT_MAX) <= 0){ return b.intValue(); }
+        else{ return b; }
+    }
+
+    private static @NotNull BigInteger big(@NotNull Object o){
+        if(o instanceof Integer){ return BigInteger.valueOf((Integer) o); }
+        else{ return (BigInteger) o; }
+    }
+
     static @NotNull Object plus(@NotNull Object a, @NotNull Object b){
         return biDispatch(a, b, _plus);
     }
@@ -56,11 +98,16 @@ class NumericOperators{
     }
 
     private static Object biDispatch(@NotNull Object a, @NotNull Object b, @NotNull NumericOperators.NumericBiFunc op){
+        if(a instanceof Integer && b instanceof Integer){
+            return op.apply((int) (Integer) a, (int) (Integer) b);
+        }
+        else if(a instanceof BigInteger || b instanceof BigInteger){
+            if(isExact(a) && isExact(b)){ return op.apply(big(a), big(b)); }
+            else if(a instanceof BigInteger){ return biDispatch(((BigInteger) a).doubleValue(), b, op); }
+            else{ return biDispatch(a, ((BigInteger) b).doubleValue(), op); }
+        }
         if(a instanceof Integer){
-            if(b instanceof Integer){
-                return op.apply((Integer) a,(Integer) b);
-            }
-            else if(b instanceof Double){
+            if(b instanceof Double){
                 return op.apply((Integer) a, (Double) b);
             }
             else if(b instanceof Complex){
@@ -89,13 +136,18 @@ class NumericOperators{
                 return op.apply((Complex) a, (Complex) b);
             }
         }
-        throw new RuntimeException("unexpected error");
+        throw new SyntaxException("not number");
     }
 
     private static final NumericBiFunc _minus = new NumericBiFunc(){
         @Override
-        public Integer apply(Integer a, Integer b){
-            return a - b;
+        public Object apply(int a, int b){
+            return integer((long) a - b);
+        }
+
+        @Override
+        public Object apply(BigInteger a, BigInteger b){
+            return integer(a.subtract(b));
         }
 
         @Override
@@ -141,8 +193,13 @@ class NumericOperators{
 
     private static final NumericBiFunc _plus = new SymmetryNumericBiFunc(){
         @Override
-        public Integer apply(Integer a, Integer b){
-            return a + b;
+        public Object apply(int a, int b){
+            return integer((long) a + b);
+        }
+
+        @Override
+        public Object apply(BigInteger a, BigInteger b){
+            return integer(a.add(b));
         }
 
         @Override
@@ -173,8 +230,13 @@ class NumericOperators{
 
     private static final NumericBiFunc _divide = new NumericBiFunc(){
         @Override
-        public Integer apply(Integer a, Integer b){
-            return a / b;
+        public Object apply(int a, int b){
+            return integer((long) a / b);
+        }
+
+        @Override
+        public Object apply(BigInteger a, BigInteger b){
+            return integer(a.divide(b));
         }
 
         @Override
@@ -220,8 +282,13 @@ class NumericOperators{
 
     private static final NumericBiFunc _multiply = new SymmetryNumericBiFunc(){
         @Override
-        public Integer apply(Integer a, Integer b){
-            return a * b;
+        public Object apply(int a, int b){
+            return integer((long) a * b);
+        }
+
+        @Override
+        public Object apply(BigInteger a, BigInteger b){
+            return integer(a.multiply(b));
         }
 
         @Override
@@ -251,7 +318,12 @@ class NumericOperators{
     };
 
     private interface NumericBiFunc{
-        Integer apply(Integer a, Integer b);
+        /**
+         * fixnum fast path, computed in long so that an overflow promotes to BigInteger
+         */
+        Object apply(int a, int b);
+
+        Object apply(BigInteger a, BigInteger b);
 
         Double apply(Integer a, Double b);
 
@@ -309,6 +381,26 @@ class NumericOperators{
         }
     }
 
+    /**
+     * @return Integer, or BigInteger when the literal does not fit in an int
+     */
+    static Optional<Object> tryParseInteger(@NotNull String s){
+        var i = MagicUtils.tryParseInt(s);
+        if(i.isPresent()){
+            return Optional.of(i.get());
+        }
+        int start = s.startsWith("-") || s.startsWith("+") ? 1 : 0;
+        if(start == s.length()){
+            return Optional.empty();
+        }
+        for(int j = start; j < s.length(); j++){
+            if(!Character.isDigit(s.charAt(j))){
+                return Optional.empty();
+            }
+        }
+        return Optional.of(integer(new BigInteger(s)));
+    }
+
     static Optional<Double> tryParseDouble(@NotNull String s){
         if(FloatingPointLiterals.isDoubleParsable(s)){
             return Optional.of(Double.parseDouble(s));
@@ -0,0 +1,155 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * immutable cons cell of a proper list, cons car and cdr are O(1).
+ * it is a read-only {@link List} so embedders can keep treating lists as java lists
+ */
+final class Pair extends AbstractList<Object> {
+    final Object car;
+    /**
+     * either another Pair or {@link Jispy#Nil}
+     */
+    final List<Object> cdr;
+    private final int size;
+
+    private Pair(Object car, @NotNull List<Object> cdr, int size) {
+        this.car = car;
+        this.cdr = cdr;
+        this.size = size;
+    }
+
+    static @NotNull Pair cons(Object car, @NotNull List<?> cdr) {
+        if (cdr instanceof Pair) {
+            var p = (Pair) cdr;
+            return new Pair(car, p, p.size + 1);
+        }
+        else if (cdr.isEmpty()) { return new Pair(car, Jispy.Nil, 1); }
+        else { return cons(car, fromList(cdr)); }
+    }
+
+    static @NotNull List<Object> fromList(@NotNull List<?> l) {
+        if (l instanceof Pair) { return (Pair) l; }
+        return prepend(l.toArray(), Jispy.Nil);
+    }
+
+    static @NotNull List<Object> fromArray(@NotNull Object[] values) {
+        return prepend(values, Jispy.Nil);
+    }
+
+    /**
+     * @return list of the elements of head followed by tail, tail is shared
+     */
+    static @NotNull List<Object> append(@NotNull List<?> head, @NotNull List<?> tail) {
+        return prepend(head.toArray(), fromList(tail));
+    }
+
+    private static @NotNull List<Object> prepend(@NotNull Object[] values, @NotNull List<Object> tail) {
+        var res = tail;
+        int size = tail.size();
+        for (int i = values.length - 1; i >= 0; i--) {
+            res = new Pair(values[i], res, ++size);
+        }
+        return res;
+    }
+
+    /**
+     * converts nested lists, as read from source by quote, into pairs
+     */
+    static Object fromTree(Object x) {
+        if (!(x instanceof List) || x instanceof Pair) { return x; }
+        var values = ((List<?>) x).toArray();
+        for (int i = 0; i < values.length; i++) values[i] = fromTree(values[i]);
+        return fromArray(values);
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= size) { throw new IndexOutOfBoundsException(index); }
+        var p = this;
+        for (int i = 0; i < index; i++) p = (Pair) p.cdr;
+        return p.car;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public @NotNull List<Object> subList(int fromIndex, int toIndex) {
+        if (toIndex != size || fromIndex < 0 || fromIndex > size) { return super.subList(fromIndex, toIndex); }
+        List<Object> tail = this;
+        for (int i = 0; i < fromIndex; i++) tail = ((Pair) tail).cdr;
+        return tail;
+    }
+
+    @Override
+    public @NotNull Iterator<Object> iterator() {
+        return listIterator(0);
+    }
+
+    @Override
+    public @NotNull ListIterator<Object> listIterator(int index) {
+        if (index < 0 || index > size) { throw new IndexOutOfBoundsException(index); }
+        return new ListIterator<>() {
+            private List<Object> cursor = subList(index, size);
+            private int nextIndex = index;
+
+            @Override
+            public boolean hasNext() {
+                return cursor instanceof Pair;
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                var p = (Pair) cursor;
+                cursor = p.cdr;
+                nextIndex++;
+                return p.car;
+            }
+
+            @Override
+            public boolean hasPrevious() {
+                return nextIndex > 0;
+            }
+
+            @Override
+            public Object previous() {
+                if (!hasPrevious()) { throw new NoSuchElementException(); }
+                nextIndex--;
+                cursor = subList(nextIndex, size);
+                return ((Pair) cursor).car;
+            }
+
+            @Override
+            public int nextIndex() {
+                return nextIndex;
+            }
+
+            @Override
+            public int previousIndex() {
+                return nextIndex - 1;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void set(Object o) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void add(Object o) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * pmap, pfor-each and preduce. the elements are split in halves until a part has at most the split threshold
+ * of the caller's environment, and the parts run on its pool. every call binds a new frame, so the frames are
+ * confined to the worker running them, while globals and captured frames are shared: the procedure should not
+ * assign them. workers evaluate in the global environment of the caller. the first exception is rethrown on
+ * the caller as it was thrown, the remaining parts are skipped. handlers of with-exception-handler installed
+ * by the caller do not apply on the workers, guard does
+ */
+final class Parallel {
+    private Parallel() {
+    }
+
+    private static ForkJoinPool pool(Environment global) {
+        return global != null && global.pool != null ? global.pool : ForkJoinPool.commonPool();
+    }
+
+    private static int threshold(Environment global) {
+        return global != null ? global.splitThreshold : 1;
+    }
+
+    private static Object call(Environment global, @NotNull Lambda proc, @NotNull Object[] args) {
+        if (global != null && proc instanceof Procedure) { return ((Procedure) proc).invoke(global, args); }
+        return proc.apply(Arrays.asList(args));
+    }
+
+    /**
+     * @return elements of the lists in columns, as long as the shortest list
+     */
+    private static @NotNull Object[][] columns(@NotNull List<Object> lists) {
+        var arrays = new Object[lists.size()][];
+        int length = Integer.MAX_VALUE;
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = ((List<?>) lists.get(i)).toArray();
+            length = Math.min(length, arrays[i].length);
+        }
+        var res = new Object[length][];
+        for (int j = 0; j < length; j++) {
+            var args = new Object[arrays.length];
+            for (int i = 0; i < arrays.length; i++) args[i] = arrays[i][j];
+            res[j] = args;
+        }
+        return res;
+    }
+
+    static @NotNull List<Object> map(@NotNull Lambda proc, @NotNull List<Object> lists) {
+        var args = columns(lists);
+        var res = new Object[args.length];
+        var global = Environment.current();
+        run(global, args.length, threshold(global), (from, to) -> {
+            for (int i = from; i < to; i++) res[i] = call(global, proc, args[i]);
+        });
+        return Pair.fromArray(res);
+    }
+
+    static void forEach(@NotNull Lambda proc, @NotNull List<Object> lists) {
+        var args = columns(lists);
+        var global = Environment.current();
+        run(global, args.length, threshold(global), (from, to) -> {
+            for (int i = from; i < to; i++) call(global, proc, args[i]);
+        });
+    }
+
+    /**
+     * folds each part starting from init, then combines the results of adjacent parts with proc,
+     * so proc must be associative and init its identity
+     */
+    static Object reduce(@NotNull Lambda proc, Object init, @NotNull List<?> list) {
+        var values = list.toArray();
+        var global = Environment.current();
+        int threshold = threshold(global);
+        int parts = Math.max(1, (values.length + threshold - 1) / threshold);
+        var results = new Object[parts];
+        run(global, parts, 1, (from, to) -> {
+            for (int p = from; p < to; p++) {
+                var acc = init;
+                for (int i = p * threshold, end = Math.min(values.length, i + threshold); i < end; i++) {
+                    acc = call(global, proc, new Object[]{acc, values[i]});
+                }
+                results[p] = acc;
+            }
+        });
+        var acc = results[0];
+        for (int p = 1; p < parts; p++) acc = call(global, proc, new Object[]{acc, results[p]});
+        return acc;
+    }
+
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    /**
+     * @param threshold largest range run by one task
+     */
+    private static void run(Environment global, int length, int threshold, @NotNull Range range) {
+        var failure = new AtomicReference<RuntimeException>();
+        var task = new Part(global, range, 0, length, threshold, failure);
+        var pool = pool(global);
+        if (ForkJoinTask.getPool() == pool) { task.invoke(); }
+        else { pool.invoke(task); }
+        if (failure.get() != null) { throw failure.get(); }
+    }
+
+    private static final class Part extends RecursiveAction {
+        private final Environment global;
+        private final Range range;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final AtomicReference<RuntimeException> failure;
+
+        Part(Environment global, @NotNull Range range, int from, int to, int threshold,
+             @NotNull AtomicReference<RuntimeException> failure) {
+            this.global = global;
+            this.range = range;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            if (failure.get() != null) { return; }
+            if (to - from > threshold) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Part(global, range, from, middle, threshold, failure),
+                        new Part(global, range, middle, to, threshold, failure));
+                return;
+            }
+            try {
+                if (global == null) { range.run(from, to); }
+                else {
+                    global.enter(() -> {
+                        range.run(from, to);
+                        return null;
+                    });
+                }
+            }
+            catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * expanded forms of recently evaluated programs with their analyzed nodes, least recently used first.
+ * a hit reuses the nodes, so the lambdas of a program keep their tier counters from one evaluation to the next
+ */
+final class ParseCache {
+    static final class Entry {
+        final Object form;
+        final Node node;
+
+        Entry(Object form, @NotNull Node node) {
+            this.form = form;
+            this.node = node;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> forms;
+    private long hits;
+    private long misses;
+
+    ParseCache(int capacity) {
+        this.capacity = capacity;
+        forms = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ParseCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return expanded and analyzed form, or null when the program was not cached
+     */
+    Entry get(@NotNull String program) {
+        var x = forms.get(program);
+        if (x == null) { misses++; }
+        else { hits++; }
+        return x;
+    }
+
+    void put(@NotNull String program, @NotNull Entry entry) {
+        forms.put(program, entry);
+    }
+
+    void clear() {
+        forms.clear();
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,195 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * immutable hash array mapped trie. put copies only the path to the changed entry, so versions of
+ * a map share all other nodes. keys must not be null
+ */
+final class PersistentMap {
+    static final PersistentMap EMPTY = new PersistentMap(BitmapTrie.EMPTY, 0);
+
+    private final Trie root;
+    private final int size;
+
+    private PersistentMap(@NotNull Trie root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Object get(@NotNull Object key, Object notFound) {
+        return root.find(0, hash(key), key, notFound);
+    }
+
+    @NotNull PersistentMap put(@NotNull Object key, Object value) {
+        var added = new boolean[1];
+        var newRoot = root.assoc(0, hash(key), key, value, added);
+        if (newRoot == root) { return this; }
+        return new PersistentMap(newRoot, added[0] ? size + 1 : size);
+    }
+
+    void forEach(@NotNull BiConsumer<Object, Object> action) {
+        root.forEach(action);
+    }
+
+    private static int hash(@NotNull Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    private static Object[] cloneAndSet(@NotNull Object[] array, int i, Object a) {
+        var res = array.clone();
+        res[i] = a;
+        return res;
+    }
+
+    private abstract static class Trie {
+        abstract Object find(int shift, int hash, @NotNull Object key, Object notFound);
+
+        /**
+         * @param added set when the key was not in the trie
+         * @return this when nothing changed
+         */
+        abstract @NotNull Trie assoc(int shift, int hash, @NotNull Object key, Object value, boolean[] added);
+
+        abstract void forEach(@NotNull BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * up to 32 entries selected by 5 bits of the hash. an entry is a key and value pair,
+     * or null and a sub trie when several keys share those bits
+     */
+    private static final class BitmapTrie extends Trie {
+        static final BitmapTrie EMPTY = new BitmapTrie(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapTrie(int bitmap, @NotNull Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, @NotNull Object key, Object notFound) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) { return notFound; }
+            int i = 2 * index(bit);
+            var k = array[i];
+            var v = array[i + 1];
+            if (k == null) { return ((Trie) v).find(shift + 5, hash, key, notFound); }
+            else if (key == k || key.equals(k)) { return v; }
+            else { return notFound; }
+        }
+
+        @Override
+        @NotNull Trie assoc(int shift, int hash, @NotNull Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = 2 * index(bit);
+            if ((bitmap & bit) != 0) {
+                var k = array[i];
+                var v = array[i + 1];
+                if (k == null) {
+                    var sub = ((Trie) v).assoc(shift + 5, hash, key, value, added);
+                    if (sub == v) { return this; }
+                    return new BitmapTrie(bitmap, cloneAndSet(array, i + 1, sub));
+                }
+                else if (key == k || key.equals(k)) {
+                    if (value == v) { return this; }
+                    return new BitmapTrie(bitmap, cloneAndSet(array, i + 1, value));
+                }
+                added[0] = true;
+                var res = cloneAndSet(array, i, null);
+                res[i + 1] = split(shift + 5, k, v, hash, key, value);
+                return new BitmapTrie(bitmap, res);
+            }
+            added[0] = true;
+            var res = new Object[array.length + 2];
+            System.arraycopy(array, 0, res, 0, i);
+            res[i] = key;
+            res[i + 1] = value;
+            System.arraycopy(array, i, res, i + 2, array.length - i);
+            return new BitmapTrie(bitmap | bit, res);
+        }
+
+        private static @NotNull Trie split(int shift, @NotNull Object k1, Object v1, int h2, @NotNull Object k2, Object v2) {
+            int h1 = hash(k1);
+            if (h1 == h2) { return new CollisionTrie(h1, new Object[]{k1, v1, k2, v2}); }
+            var ignored = new boolean[1];
+            return EMPTY.assoc(shift, h1, k1, v1, ignored).assoc(shift, h2, k2, v2, ignored);
+        }
+
+        @Override
+        void forEach(@NotNull BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) { ((Trie) array[i + 1]).forEach(action); }
+                else { action.accept(array[i], array[i + 1]); }
+            }
+        }
+    }
+
+    /**
+     * keys with equal hashes
+     */
+    private static final class CollisionTrie extends Trie {
+        final int hash;
+        final Object[] array;
+
+        CollisionTrie(int hash, @NotNull Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(@NotNull Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key == array[i] || key.equals(array[i])) { return i; }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, @NotNull Object key, Object notFound) {
+            if (hash != this.hash) { return notFound; }
+            int i = indexOf(key);
+            return i < 0 ? notFound : array[i + 1];
+        }
+
+        @Override
+        @NotNull Trie assoc(int shift, int hash, @NotNull Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                return new BitmapTrie(bit(this.hash, shift), new Object[]{null, this})
+                        .assoc(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) { return this; }
+                return new CollisionTrie(hash, cloneAndSet(array, i + 1, value));
+            }
+            added[0] = true;
+            var res = Arrays.copyOf(array, array.length + 2);
+            res[array.length] = key;
+            res[array.length + 1] = value;
+            return new CollisionTrie(hash, res);
+        }
+
+        @Override
+        void forEach(@NotNull BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) action.accept(array[i], array[i + 1]);
+        }
+    }
+}
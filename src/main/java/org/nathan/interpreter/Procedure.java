@@ -6,33 +6,71 @@ import java.util.List;
 
 interface Procedure extends Lambda {
 
-    static Procedure newProcedure(Object params, @NotNull Object exp, Environment env) {
+    /**
+     * closures start interpreted, their lambda is promoted to the optimized tier once it is hot
+     */
+    static Procedure newProcedure(@NotNull Node.LambdaNode lambda, @NotNull Frame env) {
         return new Procedure() {
             @Override
             public Object apply(List<Object> args) {
-                return Jispy.eval(exp, new Environment(params, args, env));
+                return invoke(args.toArray());
             }
 
             @Override
-            public @NotNull Object expression() {
-                return exp;
+            public @NotNull Node.LambdaNode lambda() {
+                return lambda;
             }
 
             @Override
-            public Environment environment() {
+            public @NotNull Frame environment() {
                 return env;
             }
-
-            @Override
-            public @NotNull Object parameters() {
-                return params;
-            }
         };
     }
 
-    @NotNull Object expression();
+    @NotNull Node.LambdaNode lambda();
+
+    @NotNull Frame environment();
 
-    @NotNull Object parameters();
+    default @NotNull Node body() {
+        return lambda().body;
+    }
+
+    default @NotNull Object parameters() {
+        return lambda().parameters;
+    }
 
-    Environment environment();
+    default @NotNull Tier tier() {
+        return lambda().compiled != null ? Tier.OPTIMIZED : Tier.INTERPRETED;
+    }
+
+    /**
+     * call from a builtin, in the global environment of the expression being evaluated on this thread
+     */
+    default Object invoke(@NotNull Object[] args) {
+        var global = Environment.current();
+        return invoke(global != null ? global : environment().global, args);
+    }
+
+    default Object invoke(@NotNull Environment global, @NotNull Object[] args) {
+        var lambda = lambda();
+        if (global.metrics != null) { global.metrics.calls.increment(); }
+        if (!global.stackless) {
+            var code = lambda.compiled;
+            if (code == null) { code = lambda.profile(global, false); }
+            if (code != null) {
+                var stack = Profiler.stack();
+                if (stack == null) { return CompiledBody.trampoline(code.enter(this, global, args), global); }
+                int base = stack.depth;
+                stack.enter(base, lambda);
+                try {
+                    return CompiledBody.trampoline(code.enter(this, global, args), global);
+                }
+                finally {
+                    stack.depth = base;
+                }
+            }
+        }
+        return Jispy.execute(lambda.body, Frame.bind(lambda, args, environment(), global), lambda);
+    }
 }
@@ -0,0 +1,123 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * sampling profiler of scheme procedures. threads evaluating under a profiler keep a shadow stack of the
+ * names of the procedures they are in, which a background thread samples. a tail call replaces the top
+ * of the stack, as it replaces the frame. without any profiler attached, a call only reads one volatile
+ * counter. calls inside compiled code and stackless evaluation are not recorded
+ */
+public final class Profiler implements AutoCloseable {
+    private static final String ROOT = "toplevel";
+    private static final AtomicInteger attached = new AtomicInteger();
+    private static final ThreadLocal<ShadowStack> stacks = ThreadLocal.withInitial(ShadowStack::new);
+
+    private final Set<ShadowStack> sampled = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> samples = new HashMap<>();
+    private final Thread sampler;
+    private volatile boolean closed;
+
+    /**
+     * @param interval time between samples
+     */
+    public Profiler(@NotNull Duration interval) {
+        long nanos = interval.toNanos();
+        sampler = new Thread(() -> {
+            while (!closed) {
+                LockSupport.parkNanos(nanos);
+                for (var stack : sampled) record(stack.collapsed());
+            }
+        }, "jispy-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * @return shadow stack of this thread, null when no thread is profiled
+     */
+    static ShadowStack stack() {
+        return attached.get() == 0 ? null : stacks.get();
+    }
+
+    /**
+     * evaluates on this thread with its procedures sampled by this profiler
+     */
+    <T> T attach(@NotNull Supplier<T> evaluation) {
+        var stack = stacks.get();
+        if (closed || !sampled.add(stack)) { return evaluation.get(); }
+        attached.incrementAndGet();
+        try {
+            return evaluation.get();
+        }
+        finally {
+            sampled.remove(stack);
+            attached.decrementAndGet();
+        }
+    }
+
+    private synchronized void record(@NotNull String stack) {
+        samples.merge(stack, 1L, Long::sum);
+    }
+
+    public synchronized long sampleCount() {
+        return samples.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * writes one line per sampled stack, the frames from the outermost separated by ';', a space and
+     * the number of samples, as read by flamegraph.pl and similar tools
+     */
+    public synchronized void writeCollapsed(@NotNull Writer out) {
+        var writer = new PrintWriter(out);
+        samples.forEach((stack, count) -> writer.println(stack + " " + count));
+        writer.flush();
+    }
+
+    /**
+     * stops sampling, the samples taken so far can still be written
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(sampler);
+    }
+
+    /**
+     * names of the procedures a thread is in, written by that thread only. the sampler reads it without
+     * locking, so a sample may mix two consecutive states
+     */
+    static final class ShadowStack {
+        private String[] names = new String[64];
+        volatile int depth;
+
+        /**
+         * enters a procedure at the given depth, replacing any frames at and above it
+         */
+        void enter(int base, @NotNull Node.LambdaNode lambda) {
+            if (base == names.length) { names = Arrays.copyOf(names, 2 * base); }
+            names[base] = lambda.name != null ? lambda.name : "lambda";
+            depth = base + 1;
+        }
+
+        @NotNull String collapsed() {
+            var names = this.names;
+            int depth = Math.min(this.depth, names.length);
+            var res = new StringBuilder(ROOT);
+            for (int i = 0; i < depth; i++) res.append(';').append(names[i]);
+            return res.toString();
+        }
+    }
+}
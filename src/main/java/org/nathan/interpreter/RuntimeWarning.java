@@ -1,6 +1,9 @@
 package org.nathan.interpreter;
 
-class RuntimeWarning extends RuntimeException {
+/**
+ * escape of a call/cc continuation, allocated once per call/cc
+ */
+class RuntimeWarning extends ControlSignal {
     Object returnValue;
 
     RuntimeWarning(String m) {
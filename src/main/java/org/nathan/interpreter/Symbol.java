@@ -2,53 +2,90 @@ package org.nathan.interpreter;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashMap;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * symbols are interned through {@link #of(String)}, so equality is identity.
+ * the intern table holds them weakly and drops names nobody refers to any more
+ */
+final class Symbol {
+    private static final Map<String, Entry> table = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Symbol> collected = new ReferenceQueue<>();
 
-class Symbol{
     final String str;
+    private final int hash;
 
-    Symbol(@NotNull String s){
+    private Symbol(@NotNull String s) {
         this.str = s;
+        this.hash = s.hashCode();
     }
 
-    @Override
-    public boolean equals(Object o){
-        if(o == this){ return true; }
-        if(o instanceof Symbol){
-            return str.equals(((Symbol) o).str);
+    static @NotNull Symbol of(@NotNull String s) {
+        var entry = table.get(s);
+        if (entry != null) {
+            var symbol = entry.get();
+            if (symbol != null) { return symbol; }
+        }
+        expungeCollected();
+        var symbol = new Symbol(s);
+        var fresh = new Entry(symbol);
+        while (true) {
+            var old = table.putIfAbsent(s, fresh);
+            if (old == null) { return symbol; }
+            var existing = old.get();
+            if (existing != null) { return existing; }
+            else if (table.replace(s, old, fresh)) { return symbol; }
+        }
+    }
+
+    private static void expungeCollected() {
+        Entry e;
+        while ((e = (Entry) collected.poll()) != null) {
+            table.remove(e.name, e);
+        }
+    }
+
+    private static final class Entry extends WeakReference<Symbol> {
+        final String name;
+
+        Entry(@NotNull Symbol symbol) {
+            super(symbol, collected);
+            this.name = symbol.str;
         }
-        else{ return false; }
     }
 
     @Override
-    public int hashCode(){
-        return Objects.hash(str);
+    public int hashCode() {
+        return hash;
     }
 
     @Override
-    public String toString(){
+    public String toString() {
         return str;
     }
 
-    static final Symbol _quote = new Symbol("quote");
-    static final Symbol _if = new Symbol("if");
-    static final Symbol _set = new Symbol("set!");
-    static final Symbol _define = new Symbol("define");
-    static final Symbol _lambda = new Symbol("lambda");
-    static final Symbol _begin = new Symbol("begin");
-    static final Symbol _define_macro = new Symbol("define-macro");
-    static final Symbol _quasi_quote = new Symbol("quasi-quote");
-    static final Symbol _unquote = new Symbol("unquote");
-    static final Symbol _unquote_splicing = new Symbol("unquote-splicing");
-    static final Symbol eof = new Symbol("#<symbol-eof>");
+    static final Symbol _quote = of("quote");
+    static final Symbol _if = of("if");
+    static final Symbol _set = of("set!");
+    static final Symbol _define = of("define");
+    static final Symbol _lambda = of("lambda");
+    static final Symbol _begin = of("begin");
+    static final Symbol _define_macro = of("define-macro");
+    static final Symbol _quasi_quote = of("quasi-quote");
+    static final Symbol _unquote = of("unquote");
+    static final Symbol _unquote_splicing = of("unquote-splicing");
+    static final Symbol eof = of("#<symbol-eof>");
     static final Map<String, Symbol> quotes = Map.of(
             "'", _quote,
             "`", _quasi_quote,
             ",", _unquote,
             ",@", _unquote_splicing);
-    static final Symbol _append = new Symbol("append");
-    static final Symbol _cons = new Symbol("cons");
-    static final Symbol _let = new Symbol("let");
+    static final Symbol _append = of("append");
+    static final Symbol _cons = of("cons");
+    static final Symbol _let = of("let");
+    static final Symbol _guard = of("guard");
+    static final Symbol _else = of("else");
 }
@@ -5,5 +5,9 @@ class SyntaxException extends RuntimeException {
     SyntaxException(String s) {
         super(s);
     }
-}
 
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return Jispy.debug ? super.fillInStackTrace() : this;
+    }
+}
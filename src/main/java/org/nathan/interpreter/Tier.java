@@ -0,0 +1,13 @@
+package org.nathan.interpreter;
+
+/**
+ * how a procedure is currently executed
+ */
+public enum Tier {
+    BUILTIN,
+    INTERPRETED,
+    /**
+     * running bytecode generated by {@link Compiler}
+     */
+    OPTIMIZED
+}
@@ -4,4 +4,9 @@ class TypeException extends RuntimeException {
     TypeException(String s) {
         super(s);
     }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return Jispy.debug ? super.fillInStackTrace() : this;
+    }
 }
@@ -1,8 +1,11 @@
 package org.nathan.interpreter;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 
 
 public class Utils {
@@ -39,6 +42,57 @@ public class Utils {
         }
     }
 
+    /**
+     * equal? of scheme: lists and vectors are equal when their elements are, other values when eqv? or equals
+     */
+    static boolean isEqual(Object a, Object b) {
+        if (a == b) { return true; }
+        else if (a instanceof List && b instanceof List) {
+            var l1 = (List<?>) a;
+            var l2 = (List<?>) b;
+            if (l1.size() != l2.size()) { return false; }
+            Iterator<?> i1 = l1.iterator(), i2 = l2.iterator();
+            while (i1.hasNext()) {
+                if (!isEqual(i1.next(), i2.next())) { return false; }
+            }
+            return true;
+        }
+        else if (a instanceof Object[] && b instanceof Object[]) {
+            var v1 = (Object[]) a;
+            var v2 = (Object[]) b;
+            if (v1.length != v2.length) { return false; }
+            for (int i = 0; i < v1.length; i++) {
+                if (!isEqual(v1[i], v2[i])) { return false; }
+            }
+            return true;
+        }
+        else if (a instanceof double[] && b instanceof double[]) { return Arrays.equals((double[]) a, (double[]) b); }
+        else if (a instanceof long[] && b instanceof long[]) { return Arrays.equals((long[]) a, (long[]) b); }
+        else if (a instanceof List || a instanceof Object[] || b instanceof List || b instanceof Object[]) {
+            return false;
+        }
+        return Objects.equals(a, b);
+    }
+
+    /**
+     * hash consistent with {@link #isEqual}
+     */
+    static int equalHash(Object x) {
+        if (x instanceof List) {
+            int h = 1;
+            for (var e : (List<?>) x) h = 31 * h + equalHash(e);
+            return h;
+        }
+        else if (x instanceof Object[]) {
+            int h = 7;
+            for (var e : (Object[]) x) h = 31 * h + equalHash(e);
+            return h;
+        }
+        else if (x instanceof double[]) { return Arrays.hashCode((double[]) x); }
+        else if (x instanceof long[]) { return Arrays.hashCode((long[]) x); }
+        return Objects.hashCode(x);
+    }
+
     public static boolean stringContainsDigit(String s) {
         for (int i = 0; i < s.length(); i++) {
             char c = s.charAt(i);
@@ -53,6 +107,7 @@ public class Utils {
         if (o instanceof Boolean) {return (Boolean) o;}
         else if (o == null) { return false; }
         else if (o instanceof Integer || o instanceof Double) { return !o.equals(0); }
+        else if (o instanceof BigInteger) { return true; }
         else { throw new SyntaxException("not bool"); }
     }
 }
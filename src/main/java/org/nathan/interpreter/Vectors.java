@@ -0,0 +1,130 @@
+package org.nathan.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.nathan.interpreter.Jispy.evalToString;
+
+/**
+ * vectors are plain java arrays: Object[] for any values, double[] for f64vectors and long[] for s64vectors,
+ * which keep their numbers unboxed. the generic procedures accept the three kinds, the f64 and s64 ones
+ * check the kind they were given
+ */
+final class Vectors {
+    private Vectors() {
+    }
+
+    static boolean isVector(Object x) {
+        return x instanceof Object[] || x instanceof double[] || x instanceof long[];
+    }
+
+    static @NotNull double[] f64vector(Object x) {
+        if (!(x instanceof double[])) { throw new TypeException(evalToString(x) + " is not f64vector"); }
+        return (double[]) x;
+    }
+
+    static @NotNull long[] s64vector(Object x) {
+        if (!(x instanceof long[])) { throw new TypeException(evalToString(x) + " is not s64vector"); }
+        return (long[]) x;
+    }
+
+    static double toDouble(Object x) {
+        if (!(x instanceof Integer || x instanceof BigInteger || x instanceof Double)) {
+            throw new TypeException(evalToString(x) + " is not real");
+        }
+        return ((Number) x).doubleValue();
+    }
+
+    static long toLong(Object x) {
+        if (x instanceof Integer) { return (Integer) x; }
+        else if (x instanceof BigInteger && ((BigInteger) x).bitLength() < 64) { return ((BigInteger) x).longValue(); }
+        throw new TypeException(evalToString(x) + " is not a 64 bit exact integer");
+    }
+
+    /**
+     * @return i as an index of vector v
+     */
+    static int index(Object v, Object i) {
+        if (!(i instanceof Integer)) { throw new TypeException(evalToString(i) + " is not index"); }
+        int index = (Integer) i;
+        int length = length(v);
+        if (index < 0 || index >= length) {
+            throw new TypeException("index " + index + " out of range for vector of length " + length);
+        }
+        return index;
+    }
+
+    /**
+     * @return n as the length of a new vector
+     */
+    static int size(Object n) {
+        if (!(n instanceof Integer) || (Integer) n < 0) {
+            throw new TypeException(evalToString(n) + " is not a vector length");
+        }
+        return (Integer) n;
+    }
+
+    static int length(Object v) {
+        if (v instanceof Object[]) { return ((Object[]) v).length; }
+        else if (v instanceof double[]) { return ((double[]) v).length; }
+        else if (v instanceof long[]) { return ((long[]) v).length; }
+        throw new TypeException(evalToString(v) + " is not vector");
+    }
+
+    static Object ref(Object v, int i) {
+        if (v instanceof Object[]) { return ((Object[]) v)[i]; }
+        else if (v instanceof double[]) { return ((double[]) v)[i]; }
+        else if (v instanceof long[]) { return NumericOperators.integer(((long[]) v)[i]); }
+        throw new TypeException(evalToString(v) + " is not vector");
+    }
+
+    static void set(Object v, int i, Object x) {
+        if (v instanceof Object[]) { ((Object[]) v)[i] = x; }
+        else if (v instanceof double[]) { ((double[]) v)[i] = toDouble(x); }
+        else if (v instanceof long[]) { ((long[]) v)[i] = toLong(x); }
+        else { throw new TypeException(evalToString(v) + " is not vector"); }
+    }
+
+    static void fill(Object v, Object x) {
+        if (v instanceof Object[]) { Arrays.fill((Object[]) v, x); }
+        else if (v instanceof double[]) { Arrays.fill((double[]) v, toDouble(x)); }
+        else if (v instanceof long[]) { Arrays.fill((long[]) v, toLong(x)); }
+        else { throw new TypeException(evalToString(v) + " is not vector"); }
+    }
+
+    static @NotNull double[] f64vectorOf(@NotNull List<?> values) {
+        var res = new double[values.size()];
+        int i = 0;
+        for (var x : values) res[i++] = toDouble(x);
+        return res;
+    }
+
+    static @NotNull long[] s64vectorOf(@NotNull List<?> values) {
+        var res = new long[values.size()];
+        int i = 0;
+        for (var x : values) res[i++] = toLong(x);
+        return res;
+    }
+
+    static @NotNull List<Object> toList(Object v) {
+        var values = new Object[length(v)];
+        for (int i = 0; i < values.length; i++) values[i] = ref(v, i);
+        return Pair.fromArray(values);
+    }
+
+    /**
+     * @return #(...), #f64(...) or #s64(...)
+     */
+    static @NotNull String toString(Object v) {
+        var s = new StringBuilder(v instanceof double[] ? "#f64(" : v instanceof long[] ? "#s64(" : "#(");
+        int length = length(v);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) { s.append(' '); }
+            s.append(evalToString(ref(v, i)));
+        }
+        return s.append(')').toString();
+    }
+}
@@ -0,0 +1,91 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.loadLib;
+import static org.nathan.interpreter.Utils.treeList;
+
+class ActorTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+
+    @Test
+    void messages() {
+        var interpreter = new Jispy();
+        loadLib(LIB_FILE, interpreter);
+        interpreter.evalScripts("(define (counter n) " +
+                "(spawn-actor (lambda (msg) (set! n (+ n (car (cdr msg)))) (send (car msg) (list 'count n)))))");
+        interpreter.evalScripts("(define c (counter 0))");
+        assertEquals(true, interpreter.evalScripts("(actor? c)"));
+        assertEquals(true, interpreter.evalScripts("(send c (list (self) 1))"));
+        assertEquals(treeList(Symbol.of("count"), 1), interpreter.evalScripts("(receive 5000)"));
+        interpreter.evalScripts("(map (lambda (i) (send c (list (self) i))) (range 0 100))");
+        assertEquals(treeList(Symbol.of("count"), 4951),
+                interpreter.evalScripts("(begin (define (last-of n m) (if (= n 0) m (last-of (- n 1) (receive 5000)))) " +
+                        "(last-of 100 '()))"));
+        assertEquals(Symbol.of("none"), interpreter.evalScripts("(receive 10 'none)"));
+        assertEquals(Symbol.of("timeout"), interpreter.evalScripts("(guard (e (#t e)) (receive 0))"));
+
+        interpreter.evalScripts("(define (relay to) (spawn-actor (lambda (msg) (send to (list 'fib (fib msg))))))");
+        interpreter.evalScripts("(send (relay (self)) 10)");
+        assertEquals(treeList(Symbol.of("fib"), 89), interpreter.evalScripts("(receive 5000)"));
+
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(send c (lambda (x) x))"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(send c (list 1 fib))"));
+    }
+
+    @Test
+    void boundedMailboxes() {
+        var interpreter = new Jispy();
+        assertEquals(true, interpreter.evalScripts("(send (self) 1)"));
+        assertEquals(1, interpreter.evalScripts("(receive 0)"));
+        interpreter.evalScripts("(define main (self))");
+        interpreter.evalScripts("(define released #f)");
+        interpreter.evalScripts("(define (wait) (if released #t (begin (sleep 1) (wait))))");
+        interpreter.evalScripts("(define gate (spawn-actor (lambda (msg) (send main msg) (wait)) 1))");
+        interpreter.evalScripts("(send gate 'busy)");
+        assertEquals(Symbol.of("busy"), interpreter.evalScripts("(receive 5000)"));
+        assertEquals(true, interpreter.evalScripts("(send gate 2)"));
+        assertEquals(false, interpreter.evalScripts("(send gate 3)"));
+        interpreter.evalScripts("(set! released #t)");
+        assertEquals(2, interpreter.evalScripts("(receive 5000)"));
+    }
+
+    @Test
+    void privateGlobals() {
+        var interpreter = new Jispy();
+        interpreter.evalScripts("(define main (self))");
+        interpreter.evalScripts("(define x 1)");
+        interpreter.evalScripts("(define a (spawn-actor (lambda (msg) " +
+                "(if (eq? msg 'set) (set! x 10) (send main (list x (+ x 1)))))))");
+        interpreter.evalScripts("(send a 'set)");
+        interpreter.evalScripts("(send a 'get)");
+        assertEquals(treeList(10, 11), interpreter.evalScripts("(receive 5000)"));
+        assertEquals(1, interpreter.evalScripts("x"));
+
+        interpreter.evalScripts("(define (inc n) (+ n 2))");
+        interpreter.evalScripts("(define b (spawn-actor (lambda (msg) (send main (inc msg)))))");
+        interpreter.evalScripts("(define (inc n) (+ n 1))");
+        interpreter.evalScripts("(send b 1)");
+        assertEquals(2, interpreter.evalScripts("(receive 5000)"));
+    }
+
+    @Test
+    void spawningDoesNotForkTheCaller() {
+        var env = Environment.NewStandardEnv();
+        env.enter(() -> Actor.spawn(args -> null, 1));
+        env.put(Symbol.of("later"), 1);
+        assertEquals(1, env.sharedValue(Symbol.of("later")));
+    }
+
+    @Test
+    void idleActors() {
+        var interpreter = new Jispy();
+        interpreter.evalScripts("(define (spawn-idle n) (if (> n 0) (begin (spawn-actor (lambda (msg) msg) 1) " +
+                "(spawn-idle (- n 1)))))");
+        int threads = Thread.activeCount();
+        interpreter.evalScripts("(spawn-idle 100000)");
+        assertTrue(Thread.activeCount() - threads < Runtime.getRuntime().availableProcessors() + 1);
+    }
+}
@@ -0,0 +1,35 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BenchmarkSuiteTest {
+
+    @Test
+    void report() {
+        var bytes = new ByteArrayOutputStream();
+        BenchmarkSuite.run(new PrintStream(bytes), 0, 2);
+        var lines = bytes.toString().lines().toArray(String[]::new);
+        assertEquals(BenchmarkSuite.PROGRAMS.size() + 1, lines.length);
+        for (int i = 1; i < lines.length; i++) {
+            var fields = lines[i].split(",");
+            assertEquals(BenchmarkSuite.PROGRAMS.get(i - 1), fields[0]);
+            assertEquals(6, fields.length);
+            assertTrue(Double.parseDouble(fields[2]) > 0);
+        }
+        assertThrows(IllegalArgumentException.class, () -> BenchmarkSuite.run(new PrintStream(bytes), 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> BenchmarkSuite.run(new PrintStream(bytes), -1, 1));
+    }
+
+    @Test
+    void strings() {
+        var interpreter = new Jispy();
+        assertEquals("a1,2.5", interpreter.evalScripts("(string-append \"a\" (number->string 1) \",\" (number->string 2.5))"));
+        assertEquals(3, interpreter.evalScripts("(string-length \"abc\")"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(number->string 'a)"));
+    }
+}
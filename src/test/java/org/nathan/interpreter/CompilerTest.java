@@ -0,0 +1,134 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.loadLib;
+import static org.nathan.interpreter.Utils.treeList;
+
+class CompilerTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+    private static final Jispy interpreter = new Jispy();
+
+    static {
+        interpreter.setTierThreshold(0);
+        loadLib(LIB_FILE, interpreter);
+    }
+
+    @Test
+    void compiledProcedures() {
+        interpreter.evalScripts("(fib 3)");
+        interpreter.evalScripts("(lyst 1 2)");
+        assertEquals(Tier.OPTIMIZED, Jispy.tierOf(interpreter.evalScripts("fib")));
+        assertEquals(Tier.INTERPRETED, Jispy.tierOf(interpreter.evalScripts("lyst")));
+        assertEquals(Tier.BUILTIN, Jispy.tierOf(interpreter.evalScripts("car")));
+    }
+
+    @Test
+    void compiledTailCalls() {
+        var jispy = new Jispy();
+        jispy.setTierThreshold(0);
+        jispy.evalScripts("(define (ev? n) (if (= n 0) #t (od? (- n 1))))");
+        jispy.evalScripts("(define (od? n) (if (= n 0) #f (ev? (- n 1))))");
+        assertEquals(true, jispy.evalScripts("(ev? 10)"));
+        assertEquals(Tier.OPTIMIZED, Jispy.tierOf(jispy.evalScripts("ev?")));
+        assertEquals(Tier.OPTIMIZED, Jispy.tierOf(jispy.evalScripts("od?")));
+        assertEquals(true, jispy.evalScripts("(ev? 1000000)"));
+        assertEquals(false, jispy.evalScripts("(od? 1000000)"));
+        assertEquals(treeList(true, false), jispy.evalScripts("(list (od? 100001) (ev? 100001))"));
+    }
+
+    @Test
+    void promotionAfterThreshold() {
+        var jispy = new Jispy();
+        jispy.setTierThreshold(10);
+        jispy.evalScripts("(define (inc x) (+ x 1))");
+        jispy.evalScripts("(inc 1)");
+        assertEquals(Tier.INTERPRETED, Jispy.tierOf(jispy.evalScripts("inc")));
+        jispy.evalScripts("(define (loop n) (if (= n 0) n (begin (inc n) (loop (- n 1)))))");
+        jispy.evalScripts("(loop 20)");
+        assertEquals(Tier.OPTIMIZED, Jispy.tierOf(jispy.evalScripts("inc")));
+        assertEquals(Tier.OPTIMIZED, Jispy.tierOf(jispy.evalScripts("loop")));
+
+        var interpreted = new Jispy();
+        interpreted.setCompiling(false);
+        interpreted.evalScripts("(define (inc x) (+ x 1))");
+        interpreted.evalScripts("(inc 1)");
+        assertEquals(Tier.INTERPRETED, Jispy.tierOf(interpreted.evalScripts("inc")));
+    }
+
+    @Test
+    void deoptimizeOnRebinding() {
+        var jispy = new Jispy();
+        jispy.setTierThreshold(0);
+        jispy.evalScripts("(define (add a b) (+ a b))");
+        jispy.evalScripts("(define (double x) (* 2 x))");
+        jispy.evalScripts("(define (quad x) (double (double x)))");
+        assertEquals(7, jispy.evalScripts("(add 3 4)"));
+        assertEquals(12, jispy.evalScripts("(quad 3)"));
+        assertEquals(Tier.OPTIMIZED, Jispy.tierOf(jispy.evalScripts("add")));
+        assertEquals(Tier.OPTIMIZED, Jispy.tierOf(jispy.evalScripts("quad")));
+
+        jispy.evalScripts("(define (+ a b) (- a b))");
+        assertEquals(Tier.INTERPRETED, Jispy.tierOf(jispy.evalScripts("add")));
+        assertEquals(-1, jispy.evalScripts("(add 3 4)"));
+
+        jispy.evalScripts("(define (double x) (+ x x))");
+        assertEquals(Tier.INTERPRETED, Jispy.tierOf(jispy.evalScripts("quad")));
+        assertEquals(0, jispy.evalScripts("(quad 3)"));
+    }
+
+    @Test
+    void deoptimizeWhileCompilingOnAnotherThread() {
+        var jispy = new Jispy();
+        jispy.setTierThreshold(0);
+        for (int i = 0; i < 200; i++) {
+            jispy.evalScripts("(define (g) 1)");
+            jispy.evalScripts("(define (f) (g))");
+            jispy.evalScripts("(define t (future (lambda () (f))))");
+            jispy.evalScripts("(define (g) 2)");
+            jispy.evalScripts("(touch t)");
+            assertEquals(2, jispy.evalScripts("(f)"), "round " + i);
+        }
+    }
+
+    @Test
+    void deoptimizeInsideLoop() {
+        var jispy = new Jispy();
+        jispy.setTierThreshold(0);
+        jispy.evalScripts("(define (step n) (- n 1))");
+        jispy.evalScripts("(define (loop n) (if (< n 1) n (begin (if (= n 5) (set! step (lambda (n) -100)) 0) (loop (step n)))))");
+        assertEquals(-100, jispy.evalScripts("(loop 10)"));
+        assertEquals(-100, jispy.evalScripts("(loop 10)"));
+    }
+
+    @Test
+    void sameResultsAsInterpreter() {
+        assertEquals(13, interpreter.evalScripts("(fib 6)"));
+        assertEquals(3, interpreter.evalScripts("(count 0 (list 0 1 2 3 0 0))"));
+        assertEquals(treeList(1, 4, 9, 16), interpreter.evalScripts("(map square (range 1 5))"));
+        assertEquals(new BigInteger("2432902008176640000"), interpreter.evalScripts("(fact 20)"));
+        assertEquals(treeList(10), interpreter.evalScripts("((compose list twice) 5)"));
+        assertEquals(80, interpreter.evalScripts("((repeat (repeat twice)) 5)"));
+        assertEquals(treeList(1, 5, 2, 6, 3, 7, 4, 8),
+                interpreter.evalScripts("(riff-shuffle (list 1 2 3 4 5 6 7 8))"));
+        assertEquals(9045050, interpreter.evalScripts("(sum-squares-range 1 300)"));
+        assertTrue((Boolean) interpreter.evalScripts("(< (square-root 200.) 14.14215)"));
+        assertEquals(treeList(100, 110, 120), interpreter.evalScripts("(begin " +
+                "(define a1 (account 100)) (list (a1 0) (a1 10) (a1 10)))"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(twice 2 2)"));
+        assertThrows(LookUpException.class,
+                () -> interpreter.evalScripts("((lambda () (define a b) (define b 1) a))"));
+    }
+
+    @Test
+    void selfTailCallsDoNotGrowTheStack() {
+        assertEquals(0, interpreter.evalScripts("(begin " +
+                "(define (countdown n) (if (= n 0) n (countdown (- n 1)))) " +
+                "(countdown 1000000))"));
+        assertEquals(500500, interpreter.evalScripts("(sum2 1000 0)"));
+    }
+}
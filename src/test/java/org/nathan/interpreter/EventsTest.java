@@ -0,0 +1,53 @@
+package org.nathan.interpreter;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventsTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+    private static final List<String> NAMES = List.of("Parse", "Expand", "MacroExpansion", "Eval", "Load");
+
+    @Test
+    void phases(@TempDir Path dir) throws IOException {
+        var file = dir.resolve("phases.jfr");
+        try (var recording = new Recording()) {
+            for (var name : NAMES) recording.enable("org.nathan.jispy." + name).withThreshold(Duration.ZERO);
+            recording.start();
+            var interpreter = new Jispy();
+            interpreter.loadLib(new File(LIB_FILE));
+            interpreter.evalScripts("(unless #f (fib 15))");
+            assertThrows(RuntimeException.class, () -> interpreter.evalScripts("(begin (fib 15) (car 'failed))"));
+            recording.stop();
+            recording.dump(file);
+        }
+        var events = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().startsWith("org.nathan.jispy."))
+                .collect(Collectors.groupingBy(e -> e.getEventType().getName().substring(17)));
+        assertEquals(NAMES.stream().sorted().collect(Collectors.toList()),
+                events.keySet().stream().sorted().collect(Collectors.toList()));
+
+        RecordedEvent load = events.get("Load").get(0);
+        assertEquals(LIB_FILE, load.getString("source"));
+        assertEquals(new File(LIB_FILE).length(), load.getLong("formSize"));
+        assertTrue(load.getLong("allocatedBytes") > 0);
+        assertTrue(events.get("Eval").stream().anyMatch(e -> LIB_FILE.equals(e.getString("source"))));
+        assertTrue(events.get("Eval").stream().anyMatch(e -> e.getString("source") == null));
+        assertTrue(events.get("Eval").stream().filter(e -> e.getString("source") == null).count() >= 2,
+                "failed evaluations are recorded too");
+        assertEquals("unless", events.get("MacroExpansion").get(0).getString("macro"));
+        assertTrue(events.get("Expand").stream().allMatch(e -> e.getLong("formSize") >= 1));
+    }
+}
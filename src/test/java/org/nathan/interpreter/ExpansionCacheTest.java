@@ -0,0 +1,87 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Utils.treeList;
+
+class ExpansionCacheTest {
+
+    private static long entries(Path cache) throws IOException {
+        try (var files = Files.list(cache)) {
+            return files.filter(f -> f.toString().endsWith(".jspc")).count();
+        }
+    }
+
+    @Test
+    void loadFromCache(@TempDir Path dir) throws IOException {
+        var cache = dir.resolve("cache");
+        var lib = dir.resolve("lib.ss");
+        Files.writeString(lib, "(define-macro swap! (lambda (a b) `(let ((t ,a)) (set! ,a ,b) (set! ,b t))))\n" +
+                "(define (swapped a b) (swap! a b) (list a b))\n" +
+                "(define loaded (+ 1 2.5))\n" +
+                "(define quoted '(1 \"two\" three))\n");
+        Jispy.setCacheDirectory(cache.toFile());
+        try {
+            var first = new Jispy();
+            first.loadLib(lib.toFile());
+            assertEquals(1, entries(cache));
+            assertEquals(treeList(2, 1), first.evalScripts("(swapped 1 2)"));
+
+            var second = new Jispy();
+            second.loadLib(lib.toFile());
+            assertEquals(1, entries(cache));
+            assertEquals(treeList(2, 1), second.evalScripts("(swapped 1 2)"));
+            assertEquals(3.5, second.evalScripts("loaded"));
+            assertEquals(treeList(1, "two", Symbol.of("three")), second.evalScripts("quoted"));
+            assertEquals(treeList(4, 3), second.evalScripts("(let ((x 3) (y 4)) (swap! x y) (list x y))"));
+
+            var third = new Jispy();
+            third.evalScripts("(define-macro loaded (lambda () 0))");
+            third.loadLib(lib.toFile());
+            assertEquals(2, entries(cache));
+
+            Files.writeString(lib, "(define loaded 1)\n", StandardOpenOption.APPEND);
+            second.loadLib(lib.toFile());
+            assertEquals(3, entries(cache));
+            assertEquals(1, second.evalScripts("loaded"));
+        }
+        finally {
+            Jispy.setCacheDirectory(null);
+        }
+    }
+
+    @Test
+    void redefinedMacros(@TempDir Path dir) throws IOException {
+        var cache = dir.resolve("cache");
+        var lib = dir.resolve("lib.ss");
+        Files.writeString(lib, "(define answer (twice 21))\n");
+        Jispy.setCacheDirectory(cache.toFile());
+        try {
+            var first = new Jispy();
+            first.evalScripts("(define-macro twice (lambda (x) `(* 2 ,x)))");
+            first.loadLib(lib.toFile());
+            assertEquals(42, first.evalScripts("answer"));
+
+            var second = new Jispy();
+            second.evalScripts("(define-macro twice (lambda (x) `(+ ,x ,x 1)))");
+            second.loadLib(lib.toFile());
+            assertEquals(2, entries(cache));
+            assertEquals(43, second.evalScripts("answer"));
+
+            first.evalScripts("(define-macro twice (lambda (x) `(+ ,x ,x 1)))");
+            first.loadLib(lib.toFile());
+            assertEquals(2, entries(cache));
+            assertEquals(43, first.evalScripts("answer"));
+        }
+        finally {
+            Jispy.setCacheDirectory(null);
+        }
+    }
+}
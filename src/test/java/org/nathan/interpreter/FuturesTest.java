@@ -0,0 +1,72 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.loadLib;
+import static org.nathan.interpreter.Utils.treeList;
+
+class FuturesTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+
+    @Test
+    void results() {
+        var interpreter = new Jispy();
+        loadLib(LIB_FILE, interpreter);
+        assertEquals(89, interpreter.evalScripts("(touch (future (lambda () (fib 10))))"));
+        assertEquals(treeList(89, 13), interpreter.evalScripts("(begin " +
+                "(define fs (map (lambda (n) (future (lambda () (fib n)))) '(10 6))) " +
+                "(map await fs))"));
+        assertEquals(true, interpreter.evalScripts("(future? (car fs))"));
+        assertEquals(5, interpreter.evalScripts("(touch 5)"));
+        assertEquals(3, interpreter.evalScripts("(let ((a (account 1))) (touch (future (lambda () (a 2)))))"));
+
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(touch (future (lambda () (twice 1 2))))"));
+        assertEquals(Symbol.of("boom"), interpreter.evalScripts("(guard (e (#t e)) " +
+                "(touch (future (lambda () (raise 'boom)))))"));
+        assertEquals(1, interpreter.evalScripts("(call/cc (lambda (k) (touch (future (lambda () (k 1))))))"));
+    }
+
+    @Test
+    void overlappingWaits() {
+        var interpreter = new Jispy();
+        loadLib(LIB_FILE, interpreter);
+        long start = System.nanoTime();
+        assertEquals(200, interpreter.evalScripts("(length (map touch " +
+                "(map (lambda (i) (future (lambda () (sleep 100) i))) (range 0 200))))"));
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            interpreter.setExecutor(executor);
+            interpreter.evalScripts("(define done 0)");
+            interpreter.evalScripts("(spawn (lambda () (set! done 1)))");
+            assertEquals(1, interpreter.evalScripts("(touch (future (lambda () done)))"));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void concurrentGlobalAssignments() {
+        var interpreter = new Jispy();
+        var defines = new StringBuilder("(begin");
+        var futures = new StringBuilder("(map touch (list");
+        var values = new StringBuilder("(list");
+        for (int i = 0; i < 16; i++) {
+            defines.append(" (define g").append(i).append(" 0)");
+            futures.append(" (future (lambda () (set! g").append(i).append(" round)))");
+            values.append(" g").append(i);
+        }
+        interpreter.evalScripts(defines.append(")").toString());
+        for (int round = 1; round <= 50; round++) {
+            interpreter.evalScripts("(define round " + round + ")");
+            interpreter.evalScripts(futures + "))");
+            for (var value : (Iterable<?>) interpreter.evalScripts(values + ")")) assertEquals(round, value);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Utils.treeList;
+
+class HashTableTest {
+
+    @Test
+    void procedures() {
+        var interpreter = new Jispy();
+        interpreter.evalScripts("(define t (make-hash-table))");
+        interpreter.evalScripts("(hash-table-set! t 'a 1)");
+        interpreter.evalScripts("(hash-table-set! t 7 \"seven\")");
+        interpreter.evalScripts("(hash-table-set! t (list 1 2) 'pair)");
+        assertEquals(1, interpreter.evalScripts("(hash-table-ref t 'a)"));
+        assertEquals("seven", interpreter.evalScripts("(hash-table-ref t 7)"));
+        assertEquals(Symbol.of("pair"), interpreter.evalScripts("(hash-table-ref t (list 1 2))"));
+        interpreter.evalScripts("(hash-table-set! t (list (vector 1 (list 2))) 'nested)");
+        assertEquals(Symbol.of("nested"), interpreter.evalScripts("(hash-table-ref t (list (vector 1 (list 2))))"));
+        interpreter.evalScripts("(hash-table-delete! t (list (vector 1 (list 2))))");
+        assertEquals(0, interpreter.evalScripts("(hash-table-ref t 'b (lambda () 0))"));
+        assertEquals(0, interpreter.evalScripts("(hash-table-ref/default t 'b 0)"));
+        assertThrows(LookUpException.class, () -> interpreter.evalScripts("(hash-table-ref t 'b)"));
+        assertEquals(3, interpreter.evalScripts("(hash-table-count t)"));
+
+        interpreter.evalScripts("(hash-table-update! t 'a (lambda (x) (+ x 1)))");
+        interpreter.evalScripts("(hash-table-update! t 'b (lambda (x) (+ x 1)) (lambda () 10))");
+        interpreter.evalScripts("(hash-table-update!/default t 'c (lambda (x) (* x 2)) 4)");
+        assertEquals(treeList(2, 11, 8), interpreter.evalScripts("(map (lambda (k) (hash-table-ref t k)) '(a b c))"));
+        interpreter.evalScripts("(hash-table-delete! t 7)");
+        assertEquals(false, interpreter.evalScripts("(hash-table-contains? t 7)"));
+        assertEquals(true, interpreter.evalScripts("(hash-table-contains? t 'c)"));
+        assertEquals(4, interpreter.evalScripts("(length (hash-table->alist t))"));
+        assertEquals(21, interpreter.evalScripts("(begin (define sum 0) " +
+                "(hash-table-walk t (lambda (k v) (if (number? v) (set! sum (+ sum v))))) sum)"));
+        assertEquals(true, interpreter.evalScripts("(hash-table? t)"));
+    }
+
+    @Test
+    void equivalences() {
+        var interpreter = new Jispy();
+        interpreter.evalScripts("(define q (make-hash-table eq?))");
+        interpreter.evalScripts("(define v (make-hash-table eqv?))");
+        interpreter.evalScripts("(define k (list 1 2))");
+        interpreter.evalScripts("(hash-table-set! q k 1)");
+        assertEquals(1, interpreter.evalScripts("(hash-table-ref/default q k 0)"));
+        assertEquals(0, interpreter.evalScripts("(hash-table-ref/default q (list 1 2) 0)"));
+        interpreter.evalScripts("(hash-table-set! v 2.5 'x)");
+        interpreter.evalScripts("(hash-table-set! v 100000 'y)");
+        assertEquals(Symbol.of("x"), interpreter.evalScripts("(hash-table-ref v 2.5)"));
+        assertEquals(Symbol.of("y"), interpreter.evalScripts("(hash-table-ref q 100000 (lambda () (hash-table-ref v 100000)))"));
+        assertEquals(true, interpreter.evalScripts("(eqv? 2.5 2.5)"));
+        assertEquals(false, interpreter.evalScripts("(eqv? (list 1) (list 1))"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(make-hash-table =)"));
+    }
+
+    @Test
+    void savedInImages(@TempDir Path dir) {
+        var saved = new Jispy();
+        saved.evalScripts("(define k (list 1 2))");
+        saved.evalScripts("(define t (make-hash-table))");
+        saved.evalScripts("(define q (make-hash-table eq?))");
+        saved.evalScripts("(hash-table-set! t 1 'one)");
+        saved.evalScripts("(hash-table-set! t 'a (vector 1 2))");
+        saved.evalScripts("(hash-table-set! t (list \"x\" 2.5) q)");
+        saved.evalScripts("(hash-table-set! q k 'k)");
+        saved.evalScripts("(hash-table-set! q 'self q)");
+        var file = dir.resolve("tables.image").toFile();
+        saved.saveImage(file);
+
+        var restored = Jispy.loadImage(file);
+        assertEquals(3, restored.evalScripts("(hash-table-count t)"));
+        assertEquals(Symbol.of("one"), restored.evalScripts("(hash-table-ref t 1)"));
+        assertEquals(2, restored.evalScripts("(vector-ref (hash-table-ref t 'a) 1)"));
+        assertEquals(true, restored.evalScripts("(eq? (hash-table-ref t (list \"x\" 2.5)) q)"));
+        assertEquals(true, restored.evalScripts("(eq? (hash-table-ref q 'self) q)"));
+        assertEquals(Symbol.of("k"), restored.evalScripts("(hash-table-ref q k)"));
+        assertEquals(false, restored.evalScripts("(hash-table-contains? q (list 1 2))"));
+    }
+
+    @Test
+    void matchesHashMap() {
+        var random = new Random(42);
+        for (var equivalence : HashTable.Equivalence.values()) {
+            var table = new HashTable(equivalence);
+            var expected = new HashMap<Object, Object>();
+            for (int n = 0; n < 200_000; n++) {
+                Object key;
+                switch (random.nextInt(3)) {
+                    case 0:
+                        key = random.nextInt(2000) - 1000;
+                        break;
+                    case 1:
+                        key = Symbol.of("s" + random.nextInt(2000));
+                        break;
+                    default:
+                        key = BigInteger.valueOf(random.nextInt(2000)).shiftLeft(40);
+                        break;
+                }
+                if (equivalence == HashTable.Equivalence.EQ && key instanceof BigInteger) { continue; }
+                if (random.nextInt(3) == 0) { assertEquals(expected.remove(key) != null, table.remove(key)); }
+                else {
+                    table.put(key, n);
+                    expected.put(key, n);
+                }
+                assertEquals(expected.get(key), table.get(key, null));
+            }
+            assertEquals(expected.size(), table.size());
+            expected.forEach((key, value) -> assertEquals(value, table.get(key, null)));
+            table.forEach((key, value) -> assertEquals(expected.get(key), value));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.loadLib;
+import static org.nathan.interpreter.Utils.treeList;
+
+class ImageTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+
+    @Test
+    void roundTrip(@TempDir Path dir) {
+        var saved = new Jispy();
+        loadLib(LIB_FILE, saved);
+        saved.evalScripts("(define a1 (account 100))");
+        saved.evalScripts("(a1 10)");
+        saved.evalScripts("(define pair (list a1 a1 \"s\" 1.5 'x (fact 30)))");
+        saved.evalScripts("(define (evens n) (define (even? n) (if (= n 0) #t (odd? (- n 1)))) " +
+                "(define (odd? n) (if (= n 0) #f (even? (- n 1)))) even?)");
+        saved.evalScripts("(define e (evens 0))");
+        var file = dir.resolve("functions.image").toFile();
+        saved.saveImage(file);
+
+        var restored = Jispy.loadImage(file);
+        assertEquals(89, restored.evalScripts("(fib 10)"));
+        assertEquals(treeList(1, 4, 9), restored.evalScripts("(map square (range 1 4))"));
+        assertEquals(treeList(1, 4, 2, 5, 3, 6), restored.evalScripts("(riff-shuffle (list 1 2 3 4 5 6))"));
+        assertEquals(120, restored.evalScripts("(a1 10)"));
+        assertEquals(true, restored.evalScripts("(eq? (car pair) (car (cdr pair)))"));
+        assertEquals(120, restored.evalScripts("((car pair) 0)"));
+        assertEquals(restored.evalScripts("(fact 30)"), restored.evalScripts("(car (cdr (cdr (cdr (cdr (cdr pair))))))"));
+        assertEquals(true, restored.evalScripts("(e 10)"));
+        assertEquals(1, restored.evalScripts("(begin (define n 0) (unless (> n 0) (set! n 1)) n)"));
+        assertEquals(3, restored.evalScripts("(and 1 2 3)"));
+        assertEquals(110, saved.evalScripts("(a1 0)"));
+    }
+
+    @Test
+    void forks(@TempDir Path dir) {
+        var origin = new Jispy();
+        loadLib(LIB_FILE, origin);
+        origin.evalScripts("(define a1 (account 100))");
+        var fork = origin.fork();
+        fork.evalScripts("(define a2 (account 50))");
+        fork.evalScripts("(a1 5)");
+        var session = origin.newSession();
+        session.evalScripts("(define (twice-fib n) (* 2 (fib n)))");
+        var forkFile = dir.resolve("fork.image").toFile();
+        var sessionFile = dir.resolve("session.image").toFile();
+        fork.saveImage(forkFile);
+        session.saveImage(sessionFile);
+
+        var restored = Jispy.loadImage(forkFile);
+        assertEquals(60, restored.evalScripts("(a2 10)"));
+        assertEquals(115, restored.evalScripts("(a1 10)"));
+        assertEquals(178, Jispy.loadImage(sessionFile).evalScripts("(twice-fib 10)"));
+    }
+
+    @Test
+    void javaObjects(@TempDir Path dir) {
+        var saved = new Jispy();
+        saved.evalScripts("(define k (call/cc (lambda (c) c)))");
+        assertThrows(IllegalStateException.class, () -> saved.saveImage(dir.resolve("k.image").toFile()));
+        assertThrows(IllegalStateException.class, () -> Jispy.loadImage(new File(LIB_FILE)));
+    }
+}
@@ -0,0 +1,48 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputPortTest {
+
+    private static List<Object> tokens(String source) {
+        var port = new InputPort(source);
+        List<Object> res = new ArrayList<>();
+        while (true) {
+            var t = port.nextToken();
+            if (t == Symbol.eof) { return res; }
+            res.add(t);
+        }
+    }
+
+    @Test
+    void tokenize() {
+        assertEquals(List.of("(", "define", "x", "'", "(", "1", "2.5", ")", ")"),
+                tokens("(define x '(1 2.5))"));
+        assertEquals(List.of("`", "(", "a", ",@", "b", ",", "c", ")"), tokens("`(a ,@b ,c)"));
+        assertEquals(List.of("(", "f", "\"a \\\" b\"", ")"), tokens("(f \"a \\\" b\")"));
+        assertEquals(List.of("1", "2"), tokens("1 ; comment ( \" \n 2 ;; trailing"));
+        assertEquals(List.of("\"line one\nline two\""), tokens("\"line one\nline two\""));
+        assertThrows(SyntaxException.class, () -> tokens("\"unterminated"));
+    }
+
+    @Test
+    void tokensAcrossChunks() {
+        var source = new StringBuilder("(");
+        List<Object> expected = new ArrayList<>();
+        expected.add("(");
+        for (int i = 0; i < 20000; i++) {
+            source.append("atom").append(i).append(' ');
+            expected.add("atom" + i);
+        }
+        var longString = "\"" + "s".repeat(20000) + "\"";
+        source.append(longString).append(")");
+        expected.add(longString);
+        expected.add(")");
+        assertEquals(expected, tokens(source.toString()));
+    }
+}
@@ -4,6 +4,7 @@ package org.nathan.interpreter;
 import org.apache.commons.math3.complex.Complex;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigInteger;
 import java.util.List;
 
 
@@ -22,14 +23,20 @@ public class JispyTest {
 
     @Test
     public void parseTest() {
-        List<Object> expected = treeList(new Symbol("begin"),
-                treeList(new Symbol("define"), new Symbol("r"), 10),
-                treeList(new Symbol("*"), new Symbol("pi"),
-                        treeList(new Symbol("*"), new Symbol("r"), new Symbol("r"))));
+        List<Object> expected = treeList(Symbol.of("begin"),
+                treeList(Symbol.of("define"), Symbol.of("r"), 10),
+                treeList(Symbol.of("*"), Symbol.of("pi"),
+                        treeList(Symbol.of("*"), Symbol.of("r"), Symbol.of("r"))));
         var t = (List<Object>) (interpreter.parse("(begin (define r 10) (* pi (* r r)))"));
         assertTrue(Utils.treeListEqual(expected, t));
     }
 
+    @Test
+    public void symbolTest() {
+        assertSame(Symbol.of("interned"), interpreter.evalScripts("'interned"));
+        assertTrue((Boolean) interpreter.evalScripts("(eq? 'a (car '(a b)))"));
+    }
+
     @Test
     public void beginTest() {
         assertEquals(314.1592653589793,
@@ -67,6 +74,17 @@ public class JispyTest {
         assertEquals(b, interpreter.evalScripts("(map square (range 1 5))"));
     }
 
+    @Test
+    public void pairTest() {
+        var l = interpreter.evalScripts("(cons 1 (cons 2 (list 3 4)))");
+        assertTrue(l instanceof Pair);
+        assertEquals(treeList(1, 2, 3, 4), l);
+        assertTrue((Boolean) interpreter.evalScripts("(begin (define t (list 2 3)) (eq? t (cdr (cons 1 t))))"));
+        assertEquals(2000, interpreter.evalScripts("(length (range 0 2000))"));
+        assertEquals(treeList(2, 3, 4), interpreter.evalScripts("(cdr '(1 2 3 4))"));
+        assertEquals("(1 (2 3) 4)", evalToString(interpreter.evalScripts("(cons 1 (cons '(2 3) (list 4)))")));
+    }
+
     @Test
     public void mapTest() {
         List<Object> expected = (treeList(4, 6, 8, 10));
@@ -86,6 +104,70 @@ public class JispyTest {
     @Test
     public void tailRecursionTest() {
         assertEquals(500500, interpreter.evalScripts("(sum2 1000 0)"));
+        assertEquals(0, interpreter.evalScripts("(begin " +
+                "(define (countdown n) (if (= n 0) n (countdown (- n 1)))) " +
+                "(countdown 100000))"));
+    }
+
+    @Test
+    public void mutualTailRecursionTest() {
+        var jispy = new Jispy();
+        jispy.evalScripts("(define (ev? n) (if (= n 0) #t (od? (- n 1))))");
+        jispy.evalScripts("(define (od? n) (if (= n 0) #f (ev? (- n 1))))");
+        assertEquals(true, jispy.evalScripts("(ev? 1000000)"));
+        assertEquals(Tier.OPTIMIZED, Jispy.tierOf(jispy.evalScripts("ev?")));
+        assertEquals(false, jispy.evalScripts("(ev? 1000001)"));
+    }
+
+    @Test
+    public void lexicalScopeTest() {
+        assertEquals(treeList(1, 2, 3), interpreter.evalScripts("(begin " +
+                "(define (counter) (define n 0) (lambda () (set! n (+ n 1)) n)) " +
+                "(define c (counter)) " +
+                "(list (c) (c) (c)))"));
+        assertEquals(7, interpreter.evalScripts("((lambda (x) ((lambda (y) (+ x y)) 3)) 4)"));
+        assertThrows(LookUpException.class,
+                () -> interpreter.evalScripts("((lambda () (define a b) (define b 1) a))"));
+    }
+
+    @Test
+    public void numericTowerTest() {
+        assertEquals(new BigInteger("2432902008176640000"), interpreter.evalScripts("(fact 20)"));
+        assertEquals(new BigInteger("30414093201713378043612608166064768844377641568960512000000000000"),
+                interpreter.evalScripts("(fact 50)"));
+        assertEquals(Integer.MAX_VALUE, interpreter.evalScripts("(- 2147483648 1)"));
+        assertEquals(new BigInteger("2147483648"), interpreter.evalScripts("(+ 2147483647 1)"));
+        assertEquals(1, interpreter.evalScripts("(/ (fact 20) (fact 20))"));
+        assertTrue((Boolean) interpreter.evalScripts("(< 2147483647 2147483648)"));
+        assertEquals(2.0, interpreter.evalScripts("(/ 9223372036854775808 4611686018427387904.0)"));
+    }
+
+    @Test
+    public void nonLocalExitTest() {
+        assertEquals(7, interpreter.evalScripts("(begin " +
+                "(define (find-first pred l) " +
+                "  (call/cc (lambda (return) (map (lambda (x) (if (pred x) (return x) 0)) l) #f))) " +
+                "(find-first (lambda (x) (> x 6)) (range 0 1000)))"));
+        assertEquals(treeList(Symbol.of("in"), Symbol.of("out"), 1), interpreter.evalScripts("(begin " +
+                "(define log nil) " +
+                "(define (note x) (set! log (append log (list x)))) " +
+                "(define r (call/cc (lambda (k) (dynamic-wind (lambda () (note 'in)) " +
+                "(lambda () (k 1) (note 'never)) (lambda () (note 'out)))))) " +
+                "(append log (list r)))"));
+        assertEquals(treeList(Symbol.of("caught"), Symbol.of("boom")),
+                interpreter.evalScripts("(guard (e ((symbol? e) (list 'caught e))) (raise 'boom))"));
+        assertEquals(Symbol.of("other"),
+                interpreter.evalScripts("(guard (e ((number? e) e) (else 'other)) (+ 1 (raise 'x)))"));
+        assertEquals(Symbol.of("outer"), interpreter.evalScripts("(guard (e ((symbol? e) 'outer)) " +
+                "(guard (e ((number? e) 'inner)) (raise 'x)))"));
+        assertEquals(Symbol.of("error"), interpreter.evalScripts("(guard (e (#t 'error)) (car 1))"));
+        assertEquals(41, interpreter.evalScripts("(with-exception-handler (lambda (e) (* e 2)) " +
+                "(lambda () (+ 1 (raise-continuable 20))))"));
+        assertEquals(10, interpreter.evalScripts("(guard (e ((number? e) e)) " +
+                "(with-exception-handler (lambda (e) (set! log e)) (lambda () (raise 10))))"));
+        assertEquals(10, interpreter.evalScripts("log"));
+        assertEquals("raised oops", assertThrows(Condition.class, () -> interpreter.evalScripts("(raise 'oops)")).getMessage());
+        assertEquals(0, assertThrows(TypeException.class, () -> interpreter.evalScripts("(twice 2 2)")).getStackTrace().length);
     }
 
     @Test
@@ -107,7 +189,7 @@ public class JispyTest {
     @Test
     public void lispyTest() {
         var t = interpreter.evalScripts("(quote (testing 1 (2.0) -3.14e159))");
-        var tt = treeList(new Symbol("testing"), 1, treeList(2.0), -3.14e159);
+        var tt = treeList(Symbol.of("testing"), 1, treeList(2.0), -3.14e159);
         assertEquals(tt, t);
         assertEquals(4, interpreter.evalScripts("(+ 2 2)"));
         assertEquals(210, interpreter.evalScripts("(+ (* 2 100) (* 1 10))"));
@@ -179,16 +261,16 @@ public class JispyTest {
         assertEquals(2, interpreter.evalScripts("2"));
         assertEquals(4,
                 interpreter.evalScripts("(unless (= 4 (+ 1 1)) (display 2) (display 'n) 3 4)"));
-        assertEquals(new Symbol("x"),
+        assertEquals(Symbol.of("x"),
                 interpreter.evalScripts("(quote x)"));
         assertEquals(treeList(1, 2,
-                new Symbol("three")), interpreter.evalScripts("(quote (1 2 three))"));
-        assertEquals(new Symbol("x"), interpreter.evalScripts("'x"));
-        assertEquals(treeList(new Symbol("one"), 2, 3), interpreter.evalScripts("'(one 2 3)"));
+                Symbol.of("three")), interpreter.evalScripts("(quote (1 2 three))"));
+        assertEquals(Symbol.of("x"), interpreter.evalScripts("'x"));
+        assertEquals(treeList(Symbol.of("one"), 2, 3), interpreter.evalScripts("'(one 2 3)"));
         assertEquals(
                 treeList(
-                        treeList(new Symbol("testing"), 1, 2, 3, new Symbol("testing")),
-                        treeList(new Symbol("testing"), treeList(1, 2, 3), new Symbol("testing"))),
+                        treeList(Symbol.of("testing"), 1, 2, 3, Symbol.of("testing")),
+                        treeList(Symbol.of("testing"), treeList(1, 2, 3), Symbol.of("testing"))),
                 interpreter.evalScripts("(begin " +
                         "(define L (list 1 2 3)) " +
                         "(list `(testing ,@L testing) `(testing ,L testing) ) ) "));
@@ -199,4 +281,36 @@ public class JispyTest {
                      3) ;  final comment  ; => (1 2 3)"""));
     }
 
+    @Test
+    public void parseCacheTest() {
+        var cached = new Jispy();
+        cached.setParseCacheSize(2);
+        cached.evalScripts("(define-macro twice-m (lambda (x) `(begin ,x ,x)))");
+        cached.evalScripts("(define n 0)");
+        assertEquals(2, cached.evalScripts("(begin (twice-m (set! n (+ n 1))) n)"));
+        assertEquals(4, cached.evalScripts("(begin (twice-m (set! n (+ n 1))) n)"));
+        assertEquals(1, cached.getParseCacheHits());
+        cached.evalScripts("(+ 1 1)");
+        cached.evalScripts("(+ 1 2)");
+        assertEquals(6, cached.evalScripts("(begin (twice-m (set! n (+ n 1))) n)"));
+        assertEquals(1, cached.getParseCacheHits());
+        assertEquals(3, cached.evalScripts("(+ 1 2)"));
+        assertEquals(2, cached.getParseCacheHits());
+
+        cached.evalScripts("(define-macro twice-m (lambda (x) x))");
+        assertEquals(7, cached.evalScripts("(begin (twice-m (set! n (+ n 1))) n)"));
+        assertEquals(2, cached.getParseCacheHits());
+        assertEquals(8, cached.getParseCacheMisses());
+    }
+
+    @Test
+    public void cachedTemplatesTierUp() {
+        var cached = new Jispy();
+        cached.setParseCacheSize(4);
+        cached.setTierThreshold(50);
+        var program = "((lambda () (define (loop i) (if (= i 0) loop (loop (- i 1)))) (loop 0)))";
+        for (int i = 0; i < 200; i++) cached.evalScripts(program);
+        assertEquals(199, cached.getParseCacheHits());
+        assertEquals(Tier.OPTIMIZED, Jispy.tierOf(cached.evalScripts(program)));
+    }
 }
@@ -0,0 +1,121 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.loadLib;
+import static org.nathan.interpreter.Utils.treeList;
+
+class MachineTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+    private static final Jispy interpreter = new Jispy();
+
+    static {
+        interpreter.setStackless(true);
+        loadLib(LIB_FILE, interpreter);
+    }
+
+    @Test
+    void sameResultsAsInterpreter() {
+        assertEquals(13, interpreter.evalScripts("(fib 6)"));
+        assertEquals(3, interpreter.evalScripts("(count 0 (list 0 1 2 3 0 0))"));
+        assertEquals(treeList(1, 4, 9, 16), interpreter.evalScripts("(map square (range 1 5))"));
+        assertEquals(treeList(4, 6, 8), interpreter.evalScripts("(map (lambda (a b) (+ a b 2)) '(1 2 3) '(1 2 3 4))"));
+        assertEquals(new BigInteger("2432902008176640000"), interpreter.evalScripts("(fact 20)"));
+        assertEquals(treeList(10), interpreter.evalScripts("((compose list twice) 5)"));
+        assertEquals(80, interpreter.evalScripts("((repeat (repeat twice)) 5)"));
+        assertEquals(treeList(100, 110, 120), interpreter.evalScripts("(begin " +
+                "(define a1 (account 100)) (list (a1 0) (a1 10) (a1 10)))"));
+        assertEquals(3, interpreter.evalScripts("(and (> 2 1) 2 3)"));
+        assertEquals(3, interpreter.evalScripts("(apply + 1 2)"));
+        assertThrows(ArgumentsCountException.class, () -> interpreter.evalScripts("(apply)"));
+        assertEquals(35, interpreter.evalScripts("(call/cc (lambda (throw) " +
+                "(+ 5 (* 10 (call/cc (lambda (escape) (* 100 (escape 3))))))))"));
+        assertEquals(3, interpreter.evalScripts("(call/cc (lambda (throw) " +
+                "(+ 5 (* 10 (call/cc (lambda (escape) (* 100 (throw 3))))))))"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(twice 2 2)"));
+        assertThrows(LookUpException.class,
+                () -> interpreter.evalScripts("((lambda () (define a b) (define b 1) a))"));
+    }
+
+    @Test
+    void deepRecursion() {
+        assertEquals(200000, interpreter.evalScripts("(begin " +
+                "(define (depth n) (if (= n 0) 0 (+ 1 (depth (- n 1))))) " +
+                "(depth 200000))"));
+        assertEquals(100000, interpreter.evalScripts("(length (map (lambda (x) x) (range 0 100000)))"));
+        assertEquals(0, interpreter.evalScripts("(begin " +
+                "(define (countdown n) (if (= n 0) n (countdown (- n 1)))) " +
+                "(countdown 1000000))"));
+    }
+
+    @Test
+    void reentrantContinuations() {
+        assertEquals(3, interpreter.evalScripts("(begin " +
+                "(define k 0) (define n 0) " +
+                "(define x (+ 1 (call/cc (lambda (c) (set! k c) 1)))) " +
+                "(set! n (+ n 1)) " +
+                "(if (< n 3) (k n) x))"));
+        assertEquals(treeList(1, 2, 3), interpreter.evalScripts("(begin " +
+                "(define saved 0) (define out nil) " +
+                "(define v (call/cc (lambda (c) (set! saved c) 1))) " +
+                "(set! out (append out (list v))) " +
+                "(if (< v 3) (saved (+ v 1)) out))"));
+        interpreter.evalScripts("(define r (+ 100 (call/cc (lambda (c) (set! k c) 1))))");
+        assertEquals(101, interpreter.evalScripts("r"));
+        interpreter.evalScripts("(k 5)");
+        assertEquals(105, interpreter.evalScripts("r"));
+        assertEquals(treeList(2, 3, 4),
+                interpreter.evalScripts("(map (lambda (x) (call/cc (lambda (c) (c (+ x 1))))) '(1 2 3))"));
+        assertEquals(Symbol.of("boom"),
+                interpreter.evalScripts("(guard (e (#t e)) (map (lambda (x) (raise 'boom)) '(1 2)))"));
+        assertEquals(1, interpreter.evalScripts("(call/cc (lambda (k) " +
+                "(dynamic-wind (lambda () 0) (lambda () (k 1)) (lambda () 2))))"));
+    }
+
+    @Test
+    void reenteredDynamicWind() {
+        interpreter.evalScripts("(define k 0)");
+        interpreter.evalScripts("(define r nil)");
+        interpreter.evalScripts("(define trace nil)");
+        interpreter.evalScripts("(define (note x) (set! trace (cons x trace)))");
+        interpreter.evalScripts("(set! r (cons (dynamic-wind (lambda () (note 'before)) " +
+                "(lambda () (call/cc (lambda (c) (set! k c) 1))) (lambda () (note 'after))) r))");
+        interpreter.evalScripts("(k 2)");
+        assertEquals(treeList(2, 1), interpreter.evalScripts("r"));
+        assertEquals(treeList(Symbol.of("after"), Symbol.of("before"), Symbol.of("after"), Symbol.of("before")),
+                interpreter.evalScripts("trace"));
+
+        interpreter.evalScripts("(set! trace nil)");
+        assertEquals(3, interpreter.evalScripts("(call/cc (lambda (out) " +
+                "(dynamic-wind (lambda () (note 'in)) " +
+                "(lambda () (dynamic-wind (lambda () (note 'in2)) (lambda () (out 3)) (lambda () (note 'out2)))) " +
+                "(lambda () (note 'out)))))"));
+        assertEquals(treeList(Symbol.of("out"), Symbol.of("out2"), Symbol.of("in2"), Symbol.of("in")),
+                interpreter.evalScripts("trace"));
+
+        interpreter.evalScripts("(set! trace nil)");
+        assertThrows(RuntimeException.class, () -> interpreter.evalScripts("(dynamic-wind (lambda () (note 'in)) " +
+                "(lambda () (car 'x)) (lambda () (note 'out)))"));
+        assertEquals(treeList(Symbol.of("out"), Symbol.of("in")), interpreter.evalScripts("trace"));
+    }
+
+    @Test
+    void reentryUnderReturnedBuiltin() {
+        interpreter.evalScripts("(define k 0)");
+        interpreter.evalScripts("(define r nil)");
+        interpreter.evalScripts("(set! r (cons (with-exception-handler (lambda (e) 0) " +
+                "(lambda () (call/cc (lambda (c) (set! k c) 1)))) r))");
+        assertEquals(treeList(1), interpreter.evalScripts("r"));
+        assertThrows(IllegalStateException.class, () -> interpreter.evalScripts("(k 2)"));
+        assertEquals(treeList(1), interpreter.evalScripts("r"));
+
+        interpreter.evalScripts("(set! r (cons (car (map (lambda (x) " +
+                "(call/cc (lambda (c) (set! k c) x))) '(1))) r))");
+        interpreter.evalScripts("(k 2)");
+        assertEquals(treeList(2, 1, 1), interpreter.evalScripts("r"));
+    }
+}
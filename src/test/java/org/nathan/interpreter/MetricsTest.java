@@ -0,0 +1,63 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.loadLib;
+
+class MetricsTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+
+    private static long attribute(ObjectName name, String attribute) throws JMException {
+        return ((Number) ManagementFactory.getPlatformMBeanServer().getAttribute(name, attribute)).longValue();
+    }
+
+    @Test
+    void counters() throws JMException {
+        var interpreter = new Jispy();
+        interpreter.setCompiling(false);
+        loadLib(LIB_FILE, interpreter);
+        var name = interpreter.registerMetrics();
+        assertEquals(name, interpreter.registerMetrics());
+        var server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(name));
+
+        assertEquals(89, interpreter.evalScripts("(fib 10)"));
+        assertEquals(177, attribute(name, "ProcedureCalls"));
+        assertEquals(177, attribute(name, "FramesAllocated"));
+        assertEquals(0, attribute(name, "TailCalls"));
+        interpreter.evalScripts("(define (loop n) (if (= n 0) 0 (loop (- n 1))))");
+        interpreter.evalScripts("(loop 10)");
+        assertEquals(10, attribute(name, "TailCalls"));
+        assertEquals(3, interpreter.evalScripts("(call/cc (lambda (k) (+ 1 (k 3))))"));
+        assertEquals(1, attribute(name, "ContinuationEscapes"));
+
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(twice 2 2)"));
+        assertThrows(LookUpException.class, () -> interpreter.evalScripts("(undefined-procedure 1)"));
+        assertThrows(SyntaxException.class, () -> interpreter.evalScripts("(if)"));
+        assertThrows(SyntaxException.class, () -> interpreter.evalScripts("(eval '(if))"));
+        assertEquals(1, attribute(name, "TypeExceptions"));
+        assertEquals(1, attribute(name, "LookUpExceptions"));
+        assertEquals(2, attribute(name, "SyntaxExceptions"));
+
+        assertEquals(8, attribute(name, "EvalScriptsCount"));
+        assertEquals(7, attribute(name, "FormsEvaluated"));
+        var histogram = (long[]) server.getAttribute(name, "EvalScriptsLatencyHistogram");
+        assertEquals(8, Arrays.stream(histogram).sum());
+        assertTrue(attribute(name, "EvalScriptsP50Micros") <= attribute(name, "EvalScriptsP99Micros"));
+        long globals = attribute(name, "GlobalBindings");
+        interpreter.evalScripts("(define one-more 1)");
+        assertEquals(globals + 1, attribute(name, "GlobalBindings"));
+        assertEquals(3, attribute(name, "Macros"));
+
+        interpreter.unregisterMetrics();
+        assertFalse(server.isRegistered(name));
+        interpreter.evalScripts("(fib 10)");
+    }
+}
@@ -0,0 +1,73 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.loadLib;
+import static org.nathan.interpreter.Utils.treeList;
+
+class ParallelTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+
+    private static Jispy parallelInterpreter() {
+        var interpreter = new Jispy();
+        loadLib(LIB_FILE, interpreter);
+        interpreter.setParallelism(4);
+        interpreter.setSplitThreshold(8);
+        interpreter.evalScripts("(define xs (range 0 1000))");
+        return interpreter;
+    }
+
+    @Test
+    void concurrentGlobalAssignments() {
+        var interpreter = parallelInterpreter();
+        interpreter.setSplitThreshold(1);
+        interpreter.evalScripts("(define (assign i) " +
+                "(if (= i 0) (set! a0 1) (if (= i 1) (set! a1 1) (if (= i 2) (set! a2 1) (set! a3 1)))))");
+        for (int round = 0; round < 50; round++) {
+            interpreter.evalScripts("(begin (define a0 0) (define a1 0) (define a2 0) (define a3 0))");
+            interpreter.evalScripts("(pfor-each assign '(0 1 2 3))");
+            assertEquals(4, interpreter.evalScripts("(+ a0 a1 a2 a3)"));
+        }
+    }
+
+    @Test
+    void forksKeepTheirPool() {
+        var interpreter = parallelInterpreter();
+        var fork = interpreter.fork();
+        interpreter.setParallelism(2);
+        interpreter.setParallelism(3);
+        assertEquals(499500, fork.evalScripts("(preduce + 0 xs)"));
+        assertEquals(499500, interpreter.evalScripts("(preduce + 0 xs)"));
+    }
+
+    @Test
+    void sameResultsAsSequential() {
+        var interpreter = parallelInterpreter();
+        assertEquals(interpreter.evalScripts("(map square xs)"), interpreter.evalScripts("(pmap square xs)"));
+        assertEquals(interpreter.evalScripts("(map (lambda (x) (fib 12)) xs)"),
+                interpreter.evalScripts("(pmap (lambda (x) (fib 12)) xs)"));
+        assertEquals(treeList(2, 4, 6), interpreter.evalScripts("(pmap + '(1 2 3) '(1 2 3 4))"));
+        assertEquals(Jispy.Nil, interpreter.evalScripts("(pmap square nil)"));
+        assertEquals(499500, interpreter.evalScripts("(preduce + 0 xs)"));
+        assertEquals(7, interpreter.evalScripts("(preduce + 7 nil)"));
+        assertEquals(interpreter.evalScripts("xs"), interpreter.evalScripts("(preduce append nil (pmap list xs))"));
+        assertNull(interpreter.evalScripts("(pfor-each (lambda (x) (fib 10)) xs)"));
+        interpreter.setParallelism(0);
+        interpreter.setSplitThreshold(1);
+        assertEquals(interpreter.evalScripts("(map cube xs)"), interpreter.evalScripts("(pmap cube xs)"));
+    }
+
+    @Test
+    void failures() {
+        var interpreter = parallelInterpreter();
+        assertEquals(Symbol.of("boom"), interpreter.evalScripts("(guard (e (#t e)) " +
+                "(pmap (lambda (x) (if (= x 500) (raise 'boom) x)) xs))"));
+        assertEquals(Symbol.of("found"), interpreter.evalScripts("(call/cc (lambda (k) " +
+                "(pfor-each (lambda (x) (if (= x 7) (k 'found) x)) xs)))"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(pmap (lambda (x y) x) xs)"));
+        assertThrows(LookUpException.class, () -> interpreter.evalScripts("(preduce (lambda (a b) c) 0 xs)"));
+        assertEquals(1000, interpreter.evalScripts("(guard (e (#t (length xs))) (pmap car xs))"));
+    }
+}
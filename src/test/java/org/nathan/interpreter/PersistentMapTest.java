@@ -0,0 +1,66 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentMapTest {
+
+    /**
+     * equal hashes for every pair of ids differing only in the lowest bit
+     */
+    private static final class Key {
+        final int id;
+
+        Key(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id >> 1;
+        }
+    }
+
+    @Test
+    void sameContentsAsHashMap() {
+        var random = new Random(42);
+        var expected = new HashMap<Object, Object>();
+        var map = PersistentMap.EMPTY;
+        for (int i = 0; i < 20000; i++) {
+            var key = random.nextBoolean() ? new Key(random.nextInt(4000)) : Symbol.of("s" + random.nextInt(4000));
+            expected.put(key, i);
+            map = map.put(key, i);
+        }
+        assertEquals(expected.size(), map.size());
+        for (var e : expected.entrySet()) assertEquals(e.getValue(), map.get(e.getKey(), null));
+        var count = new int[1];
+        map.forEach((k, v) -> {
+            assertEquals(expected.get(k), v);
+            count[0]++;
+        });
+        assertEquals(expected.size(), count[0]);
+        assertNull(map.get(new Key(5000), null));
+    }
+
+    @Test
+    void versionsAreIndependent() {
+        var v1 = PersistentMap.EMPTY.put(new Key(0), "a").put(new Key(1), "b");
+        var v2 = v1.put(new Key(1), "c").put(new Key(2), null);
+        assertEquals("b", v1.get(new Key(1), null));
+        assertEquals("c", v2.get(new Key(1), null));
+        assertEquals(2, v1.size());
+        assertEquals(3, v2.size());
+        assertSame(v2, v2.put(new Key(1), "c"));
+        assertEquals("none", v1.get(new Key(2), "none"));
+        assertNull(v2.get(new Key(2), "none"));
+    }
+}
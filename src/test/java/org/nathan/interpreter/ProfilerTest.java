@@ -0,0 +1,37 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.loadLib;
+
+class ProfilerTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+
+    @Test
+    void collapsedStacks() {
+        var interpreter = new Jispy();
+        interpreter.setCompiling(false);
+        loadLib(LIB_FILE, interpreter);
+        interpreter.evalScripts("(define (spin n) (if (= n 0) 0 (spin (- n 1))))");
+        interpreter.evalScripts("(define (work n) (+ (fib n) (spin 100000)))");
+        assertNull(Profiler.stack());
+        try (var profiler = new Profiler(Duration.ofMillis(1))) {
+            assertEquals(89 + 10946, interpreter.evalScripts("(+ (fib 10) (work 20))", profiler));
+            assertNull(Profiler.stack());
+            assertTrue(profiler.sampleCount() > 0);
+            var out = new StringWriter();
+            profiler.writeCollapsed(out);
+            var lines = out.toString().lines().toArray(String[]::new);
+            for (var line : lines) {
+                assertTrue(line.matches("toplevel(;[^; ]+)* \\d+"), line);
+                assertFalse(line.contains("spin;spin"), line);
+            }
+            assertTrue(out.toString().contains("toplevel;work;fib;fib"));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.loadLib;
+import static org.nathan.interpreter.Utils.treeList;
+
+class SessionTest {
+
+    private static final String LIB_FILE = "src/main/resources/functions.ss";
+
+    private static Jispy sharedInterpreter() {
+        var shared = new Jispy();
+        shared.setTierThreshold(50);
+        loadLib(LIB_FILE, shared);
+        shared.evalScripts("(define counter 0)");
+        shared.evalScripts("(define (bump) (set! counter (+ counter 1)) counter)");
+        shared.evalScripts("(define (squares l) (map square l))");
+        return shared;
+    }
+
+    @Test
+    void overlays() {
+        var shared = sharedInterpreter();
+        var a = shared.newSession();
+        var b = shared.newSession();
+        assertThrows(IllegalStateException.class, () -> shared.evalScripts("(define y 1)"));
+        assertEquals(13, shared.evalScripts("(fib 6)"));
+
+        a.evalScripts("(define x 1)");
+        assertEquals(1, a.evalScripts("x"));
+        assertThrows(LookUpException.class, () -> b.evalScripts("x"));
+
+        assertEquals(1, a.evalScripts("(bump)"));
+        assertEquals(2, a.evalScripts("(bump)"));
+        assertEquals(1, b.evalScripts("(bump)"));
+        assertEquals(0, shared.evalScripts("counter"));
+
+        a.evalScripts("(define (square x) (* x x x))");
+        assertEquals(treeList(1, 8, 27), a.evalScripts("(squares (list 1 2 3))"));
+        assertEquals(treeList(1, 4, 9), b.evalScripts("(squares (list 1 2 3))"));
+
+        a.evalScripts("(define-macro twice-m (lambda (x) `(begin ,x ,x)))");
+        assertEquals(3, a.evalScripts("(begin (define n 1) (twice-m (set! n (+ n 1))) n)"));
+        assertThrows(LookUpException.class, () -> b.evalScripts("(twice-m 1)"));
+    }
+
+    @Test
+    void forks() {
+        var parent = sharedInterpreter();
+        parent.setTierThreshold(0);
+        assertEquals(89, parent.evalScripts("(fib 10)"));
+        var snapshot = parent.snapshot();
+        var child = snapshot.fork();
+        child.evalScripts("(define (fib n) n)");
+        child.evalScripts("(define-macro ignore (lambda (x) 0))");
+        assertEquals(10, child.evalScripts("(fib 10)"));
+        assertEquals(0, child.evalScripts("(ignore (car 1))"));
+        assertEquals(89, parent.evalScripts("(fib 10)"));
+        assertThrows(LookUpException.class, () -> parent.evalScripts("(ignore (car 1))"));
+
+        parent.evalScripts("(define late 1)");
+        assertThrows(LookUpException.class, () -> snapshot.fork().evalScripts("late"));
+        assertEquals(1, parent.fork().evalScripts("late"));
+        assertEquals(1, child.evalScripts("(bump)"));
+        assertEquals(0, parent.evalScripts("counter"));
+        assertEquals(89, snapshot.fork().evalScripts("(fib 10)"));
+    }
+
+    @Test
+    void concurrentSessions() throws Exception {
+        var shared = sharedInterpreter();
+        var pool = Executors.newFixedThreadPool(8);
+        try {
+            var tasks = new ArrayList<Callable<Object>>();
+            for (int t = 0; t < 16; t++) {
+                int id = t;
+                tasks.add(() -> {
+                    var session = shared.newSession();
+                    session.evalScripts("(define id " + id + ")");
+                    if (id % 2 == 0) { session.evalScripts("(define (square x) (+ x id))"); }
+                    for (int i = 0; i < 200; i++) {
+                        assertEquals(89, session.evalScripts("(fib 10)"));
+                        session.evalScripts("(bump)");
+                    }
+                    return treeList(session.evalScripts("counter"), session.evalScripts("(squares (list 1 2))"));
+                });
+            }
+            var results = pool.invokeAll(tasks);
+            for (int t = 0; t < results.size(); t++) {
+                var expected = t % 2 == 0 ? treeList(1 + t, 2 + t) : treeList(1, 4);
+                assertEquals(treeList(200, expected), results.get(t).get());
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        assertEquals(0, shared.evalScripts("counter"));
+    }
+}
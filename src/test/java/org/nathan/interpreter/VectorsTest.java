@@ -0,0 +1,86 @@
+package org.nathan.interpreter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.nathan.interpreter.Jispy.evalToString;
+import static org.nathan.interpreter.Utils.treeList;
+
+class VectorsTest {
+
+    @Test
+    void vectors() {
+        var interpreter = new Jispy();
+        assertEquals("#(1 (2 3) a s)", evalToString(interpreter.evalScripts("#(1 (2 3) a \"s\")")));
+        assertEquals("#()", evalToString(interpreter.evalScripts("(vector)")));
+        interpreter.evalScripts("(define v (make-vector 3 0))");
+        interpreter.evalScripts("(vector-set! v 1 'x)");
+        assertEquals("#(0 x 0)", evalToString(interpreter.evalScripts("v")));
+        assertEquals(3, interpreter.evalScripts("(vector-length v)"));
+        assertEquals(Symbol.of("x"), interpreter.evalScripts("(vector-ref v 1)"));
+        interpreter.evalScripts("(vector-fill! v 7)");
+        assertEquals(treeList(7, 7, 7), interpreter.evalScripts("(vector->list v)"));
+        assertEquals(true, interpreter.evalScripts("(equal? (list->vector '(1 2)) #(1 2))"));
+        assertEquals(true, interpreter.evalScripts("(equal? (list (vector 1)) (list (vector 1)))"));
+        assertEquals(true, interpreter.evalScripts("(equal? #(1 (2 #f64(3))) (vector 1 (list 2 (f64vector 3))))"));
+        assertEquals(false, interpreter.evalScripts("(equal? (list (vector 1)) (list (vector 2)))"));
+        assertEquals(false, interpreter.evalScripts("(equal? #(1 2) '(1 2))"));
+        assertEquals(treeList(2, 3), interpreter.evalScripts("(vector-ref #(1 (2 3)) 1)"));
+        assertEquals(true, interpreter.evalScripts("(vector? #(1))"));
+        assertEquals(false, interpreter.evalScripts("(vector? '(1))"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(vector-ref v 3)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(vector-ref v -1)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(vector-set! v 3 0)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(f64vector-ref (f64vector 1) 1)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(s64vector-set! (s64vector 1) 2 0)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(make-vector -1)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(make-f64vector -1)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(make-s64vector -1 0)"));
+        assertThrows(SyntaxException.class, () -> interpreter.evalScripts("#(1 2"));
+    }
+
+    @Test
+    void numericVectors() {
+        var interpreter = new Jispy();
+        interpreter.evalScripts("(define d (make-f64vector 4 0))");
+        interpreter.evalScripts("(f64vector-set! d 2 1.5)");
+        interpreter.evalScripts("(vector-set! d 3 2)");
+        assertEquals("#f64(0.0 0.0 1.5 2.0)", evalToString(interpreter.evalScripts("d")));
+        assertEquals(1.5, interpreter.evalScripts("(f64vector-ref d 2)"));
+        assertEquals(4, interpreter.evalScripts("(f64vector-length d)"));
+        assertEquals(true, interpreter.evalScripts("(f64vector? #f64(1 2.5))"));
+        assertEquals(true, interpreter.evalScripts("(equal? (f64vector 1 2) #f64(1.0 2.0))"));
+
+        interpreter.evalScripts("(define s (s64vector 1 2 3))");
+        interpreter.evalScripts("(s64vector-set! s 0 9223372036854775807)");
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE), interpreter.evalScripts("(s64vector-ref s 0)"));
+        assertEquals(3, interpreter.evalScripts("(vector-ref #s64(1 2 3) 2)"));
+        assertEquals("#s64(9223372036854775807 2 3)", evalToString(interpreter.evalScripts("s")));
+
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(s64vector-set! s 0 1.5)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(s64vector-set! s 0 9223372036854775808)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(f64vector-set! d 0 'a)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("(f64vector-ref s 0)"));
+        assertThrows(TypeException.class, () -> interpreter.evalScripts("#s64(1.5)"));
+    }
+
+    @Test
+    void savedInImages(@TempDir Path dir) {
+        var saved = new Jispy();
+        saved.evalScripts("(define v (vector 1 #f64(0.5) #s64(3)))");
+        saved.evalScripts("(define w (vector v (vector-ref v 1)))");
+        saved.evalScripts("(define (first) (vector-ref #(a b) 0))");
+        var file = dir.resolve("vectors.image").toFile();
+        saved.saveImage(file);
+
+        var restored = Jispy.loadImage(file);
+        assertEquals("#(1 #f64(0.5) #s64(3))", evalToString(restored.evalScripts("v")));
+        assertEquals(true, restored.evalScripts("(eq? (vector-ref w 0) v)"));
+        assertEquals(true, restored.evalScripts("(eq? (vector-ref w 1) (vector-ref v 1))"));
+        assertEquals(Symbol.of("a"), restored.evalScripts("(first)"));
+    }
+}